@@ -0,0 +1,314 @@
+package bot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Arena class
+ *
+ * Plays BotStarter against BotStarter in-process, many games at once. Every
+ * worker thread owns two independent bots and drives them through BotParser
+ * with the same settings/update/action lines the game server sends. Games
+ * start from a few random moves so deterministic engines don't replay the
+ * same game, and the bots swap colours every game. Each bot has a time bank
+ * kept the way the game server keeps it, running out of it loses the game.
+ *
+ * Run: java -cp bin bot.Arena [-games n] [-threads n] [-time ms] [-depth n]
+ *      [-openings plies] [-seed n] [-hash mb] [-columns n] [-rows n]
+ *      [-a key=value]... [-b key=value]...
+ * The -a and -b options are sent to bot A or B as extra "settings key value" lines.
+ */
+
+public class Arena {
+	private static final int TIMEBANK = 10000;
+
+	private int mColumns = 7;
+	private int mRows = 6;
+	private int mGames = 1000;
+	private int mThreads = Runtime.getRuntime().availableProcessors();
+	private int mTimePerMove = 500;
+	private int mDepth = 6;
+	private int mOpenings = 2;
+	private long mSeed = 1;
+	private final List<String> mSettingsA = new ArrayList<>();
+	private final List<String> mSettingsB = new ArrayList<>();
+
+	private final AtomicInteger mNextGame = new AtomicInteger();
+
+	/** results of one worker, merged when all games are done */
+	private static final class Results {
+		int winsA, winsB, draws, illegalA, illegalB, timeoutsA, timeoutsB;
+		long[] latenciesA = new long[1024], latenciesB = new long[1024];
+		int movesA, movesB;
+
+		void addLatency(boolean botA, long nanos) {
+			if (botA) {
+				if (movesA == latenciesA.length)
+					latenciesA = Arrays.copyOf(latenciesA, movesA * 2);
+				latenciesA[movesA++] = nanos;
+			} else {
+				if (movesB == latenciesB.length)
+					latenciesB = Arrays.copyOf(latenciesB, movesB * 2);
+				latenciesB[movesB++] = nanos;
+			}
+		}
+
+		void merge(Results r) {
+			winsA += r.winsA;
+			winsB += r.winsB;
+			draws += r.draws;
+			illegalA += r.illegalA;
+			illegalB += r.illegalB;
+			timeoutsA += r.timeoutsA;
+			timeoutsB += r.timeoutsB;
+			for (int i = 0; i < r.movesA; i++)
+				addLatency(true, r.latenciesA[i]);
+			for (int i = 0; i < r.movesB; i++)
+				addLatency(false, r.latenciesB[i]);
+		}
+	}
+
+	/** one bot with its parser, replies are captured in memory */
+	private final class Player {
+		final BotStarter bot = new BotStarter();
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final BotParser parser = new BotParser(bot, System.in, new PrintStream(output, true));
+		final List<String> settings;
+
+		Player(List<String> settings) {
+			this.settings = settings;
+			if (mDepth > 0)
+				bot.search.setMaxDepth(mDepth);
+		}
+
+		void send(String line) {
+			parser.process(line);
+		}
+
+		String reply() {
+			String reply = output.toString().trim();
+			output.reset();
+			return reply;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Arena arena = new Arena();
+		int hash = 4;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "-games": arena.mGames = Integer.parseInt(value); break;
+			case "-threads": arena.mThreads = Integer.parseInt(value); break;
+			case "-time": arena.mTimePerMove = Integer.parseInt(value); break;
+			case "-depth": arena.mDepth = Integer.parseInt(value); break;
+			case "-openings": arena.mOpenings = Integer.parseInt(value); break;
+			case "-seed": arena.mSeed = Long.parseLong(value); break;
+			case "-hash": hash = Integer.parseInt(value); break;
+			case "-columns": arena.mColumns = Integer.parseInt(value); break;
+			case "-rows": arena.mRows = Integer.parseInt(value); break;
+			case "-a": arena.mSettingsA.add(value.replace('=', ' ')); break;
+			case "-b": arena.mSettingsB.add(value.replace('=', ' ')); break;
+			default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (System.getProperty("bot.hash") == null)
+			System.setProperty("bot.hash", Integer.toString(hash));
+		// pondering bots would compete with the other games for the cores, -a ponder=true to compare
+		if (System.getProperty("bot.ponder") == null)
+			System.setProperty("bot.ponder", "false");
+		// the games of a run share the JVM, the first game's warm-up would only slow the others
+		if (System.getProperty("bot.warmup") == null)
+			System.setProperty("bot.warmup", "0");
+		// every bot would append its games to the same file, and learn from the other games
+		System.clearProperty("bot.record");
+		System.clearProperty("bot.store");
+		arena.run();
+	}
+
+	private void run() throws Exception {
+		// the bots report every search on stderr, which would serialise the workers
+		PrintStream err = System.err;
+		System.setErr(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+
+		ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+		List<Future<Results>> futures = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int t = 0; t < mThreads; t++) {
+			futures.add(pool.submit(() -> playGames()));
+		}
+		Results total = new Results();
+		for (Future<Results> future : futures) {
+			total.merge(future.get());
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+		System.setErr(err);
+
+		int games = total.winsA + total.winsB + total.draws;
+		System.out.println(String.format("games %d in %.1f s: %.1f games/s, %.0f moves/s, %d threads",
+				games, seconds, games / seconds, (total.movesA + total.movesB) / seconds, mThreads));
+		System.out.println(String.format("A %s: %d wins, B %s: %d wins, %d draws (A scores %.1f%%)",
+				mSettingsA, total.winsA, mSettingsB, total.winsB, total.draws,
+				100.0 * (total.winsA + total.draws / 2.0) / Math.max(1, games)));
+		if (total.illegalA + total.illegalB > 0)
+			System.out.println("illegal moves: A " + total.illegalA + ", B " + total.illegalB);
+		if (total.timeoutsA + total.timeoutsB > 0)
+			System.out.println("timeouts: A " + total.timeoutsA + ", B " + total.timeoutsB);
+		printLatencies("A", total.latenciesA, total.movesA);
+		printLatencies("B", total.latenciesB, total.movesB);
+	}
+
+	private static void printLatencies(String name, long[] latencies, int count) {
+		if (count == 0)
+			return;
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+		System.out.println(String.format("%s move latency ms: p50 %.2f, p90 %.2f, p99 %.2f, max %.2f",
+				name, percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+				sorted[count - 1] / 1e6));
+	}
+
+	private static double percentile(long[] sorted, int p) {
+		int index = (int) Math.min(sorted.length - 1, Math.ceil(p / 100.0 * sorted.length) - 1);
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+
+	private Results playGames() {
+		Results results = new Results();
+		Player a = new Player(mSettingsA);
+		Player b = new Player(mSettingsB);
+		int game;
+		while ((game = mNextGame.getAndIncrement()) < mGames) {
+			playGame(game, a, b, results);
+		}
+		return results;
+	}
+
+	private void playGame(int game, Player a, Player b, Results results) {
+		Random random = new Random(mSeed * 1000003 + game / 2);
+		// both colour assignments see the same opening
+		Player[] players = (game % 2 == 0) ? new Player[] { a, b } : new Player[] { b, a };
+		for (int id = 1; id <= 2; id++) {
+			Player player = players[id - 1];
+			player.bot.search.clearTable();
+			player.send("settings timebank " + TIMEBANK);
+			player.send("settings time_per_move " + mTimePerMove);
+			player.send("settings player_names player1,player2");
+			player.send("settings your_bot player" + id);
+			player.send("settings your_botid " + id);
+			player.send("settings field_columns " + mColumns);
+			player.send("settings field_rows " + mRows);
+			for (String setting : player.settings) {
+				player.send("settings " + setting);
+			}
+		}
+
+		Field field = new Field(mColumns, mRows);
+		int botId = 1;
+		for (int i = 0; i < mOpenings; i++) {
+			int column = random.nextInt(mColumns);
+			if (field.isColumnFull(column) || field.isWinningMove(column, botId))
+				continue;
+			field.play(column, botId);
+			botId = botId % 2 + 1;
+		}
+
+		// like the game server: a move takes its time out of the bank, then time_per_move is added
+		long[] banks = { TIMEBANK, TIMEBANK };
+		int round = 1;
+		while (true) {
+			Player mover = players[botId - 1];
+			boolean moverIsA = (mover == a);
+			String data = format(field);
+			for (Player player : players) {
+				player.send("update game round " + round);
+				player.send("update game field " + data);
+			}
+			long start = System.nanoTime();
+			mover.send("action move " + banks[botId - 1]);
+			long nanos = System.nanoTime() - start;
+			results.addLatency(moverIsA, nanos);
+			banks[botId - 1] -= nanos / 1000000L;
+			if (banks[botId - 1] < 0) {
+				if (moverIsA) {
+					results.timeoutsA++;
+					results.winsB++;
+				} else {
+					results.timeoutsB++;
+					results.winsA++;
+				}
+				return;
+			}
+			banks[botId - 1] = Math.min(TIMEBANK, banks[botId - 1] + mTimePerMove);
+
+			int column = -1;
+			String reply = mover.reply();
+			if (reply.startsWith("place_disc ")) {
+				try {
+					column = Integer.parseInt(reply.substring(11).trim());
+				} catch (NumberFormatException e) {
+					column = -1;
+				}
+			}
+			if (column < 0 || column >= mColumns || field.isColumnFull(column)) {
+				if (moverIsA) {
+					results.illegalA++;
+					results.winsB++;
+				} else {
+					results.illegalB++;
+					results.winsA++;
+				}
+				return;
+			}
+			if (field.isWinningMove(column, botId)) {
+				if (moverIsA)
+					results.winsA++;
+				else
+					results.winsB++;
+				return;
+			}
+			field.play(column, botId);
+			if (field.isFull()) {
+				results.draws++;
+				return;
+			}
+			botId = botId % 2 + 1;
+			if (botId == 1)
+				round++;
+		}
+	}
+
+	/**
+	 * @param field
+	 * @return the field the way the game server sends it, rows separated by ';'
+	 */
+	private static String format(Field field) {
+		StringBuilder data = new StringBuilder();
+		for (int row = 0; row < field.getNrRows(); row++) {
+			if (row > 0)
+				data.append(';');
+			for (int column = 0; column < field.getNrColumns(); column++) {
+				if (column > 0)
+					data.append(',');
+				data.append(field.getDisc(column, row));
+			}
+		}
+		return data.toString();
+	}
+}
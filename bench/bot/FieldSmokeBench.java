@@ -0,0 +1,174 @@
+package bot;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * FieldSmokeBench class
+ *
+ * A rough smoke benchmark for the hot paths of Field and BotStarter over the
+ * early, mid and late game positions in Positions, without a benchmark harness.
+ * Every operation runs a fixed number of warm-up iterations and then timed
+ * ones in the same JVM, reporting ns/op, bytes allocated per op and the
+ * allocation rate. There are no forks and results only go to a volatile sink,
+ * so the numbers catch big regressions between two builds run on one machine;
+ * they are not comparable to JMH results and too noisy for small differences.
+ *
+ * Run: java -cp bin bot.FieldSmokeBench [name filter] [iterations] [iteration ms]
+ */
+
+public class FieldSmokeBench {
+	/** one benchmarked operation on a position, the result goes to the sink */
+	interface Op {
+		long run(Field field);
+	}
+
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int MAKE_TURN_DEPTH = 8;
+
+	/** results are folded in here so the JIT can't drop the work */
+	static volatile long sink;
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) {
+		String filter = args.length > 0 ? args[0] : "";
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		long iterationMillis = args.length > 2 ? Long.parseLong(args[2]) : 500;
+
+		// a small table keeps clearing it between makeTurn calls cheap
+		System.setProperty("bot.hash", "1");
+		final BotStarter bot = new BotStarter();
+		bot.search.setMaxDepth(MAKE_TURN_DEPTH);
+
+		Map<String, Op> ops = new LinkedHashMap<>();
+		ops.put("simpleWin", field -> {
+			long wins = 0;
+			for (int column = 0; column < field.getNrColumns(); column++) {
+				for (int row = 0; row < field.getNrRows(); row++) {
+					if (field.simpleWin(column, row, Positions.BOT_ID))
+						wins++;
+				}
+			}
+			return wins;
+		});
+		ops.put("unavoidableWin", field -> {
+			long turns = 0;
+			for (int column = 0; column < field.getNrColumns(); column++) {
+				turns += field.unavoidableWin(column, field.rowIfAddDisc(column), Positions.BOT_ID);
+			}
+			return turns;
+		});
+		ops.put("verticalTurnsToWin", field -> turnsToWin(field, 0));
+		ops.put("horizontalTurnsToWin", field -> turnsToWin(field, 1));
+		ops.put("ascendingDiagonalTurnsToWin", field -> turnsToWin(field, 2));
+		ops.put("descendingDiagonalTurnsToWin", field -> turnsToWin(field, 3));
+		ops.put("copy", field -> new Field(field).getHash());
+		final Map<Field, String> texts = new IdentityHashMap<>();
+		final Field target = new Field(Positions.COLUMNS, Positions.ROWS);
+		ops.put("parseFromString", field -> {
+			target.parseFromString(texts.get(field));
+			return target.getHash();
+		});
+		ops.put("makeTurn", field -> {
+			bot.search.clearTable();
+			bot.time.startMove(bot.time.getTimebank());
+			bot.botId = Positions.BOT_ID;
+			bot.field = field;
+			return bot.makeTurn();
+		});
+
+		Map<String, Field[]> phases = new LinkedHashMap<>();
+		phases.put("early", Positions.parse(Positions.EARLY));
+		phases.put("mid", Positions.parse(Positions.MID));
+		phases.put("late", Positions.parse(Positions.LATE));
+		for (Field[] fields : phases.values()) {
+			for (Field field : fields) {
+				texts.put(field, field.toString());
+			}
+		}
+
+		PrintStream err = System.err;
+		System.setErr(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+		System.out.println(String.format("%-30s %-6s %14s %10s %12s %10s",
+				"Benchmark", "Phase", "ns/op", "error", "B/op", "MB/s"));
+		for (Map.Entry<String, Op> op : ops.entrySet()) {
+			if (!op.getKey().contains(filter))
+				continue;
+			for (Map.Entry<String, Field[]> phase : phases.entrySet()) {
+				measure(op.getKey(), phase.getKey(), op.getValue(), phase.getValue(), iterations, iterationMillis);
+			}
+		}
+		System.setErr(err);
+	}
+
+	private static long turnsToWin(Field field, int direction) {
+		long turns = 0;
+		for (int column = 0; column < field.getNrColumns(); column++) {
+			int row = field.rowIfAddDisc(column);
+			if (row == -1)
+				continue;
+			switch (direction) {
+			case 0:
+				turns += field.verticalTurnsToWin(column, row, Positions.BOT_ID);
+				break;
+			case 1:
+				turns += field.horizontalTurnsToWin(column, row, Positions.BOT_ID);
+				break;
+			case 2:
+				turns += field.ascendingDiagonalTurnsToWin(column, row, Positions.BOT_ID);
+				break;
+			default:
+				turns += field.descendingDiagonalTurnsToWin(column, row, Positions.BOT_ID);
+			}
+		}
+		return turns;
+	}
+
+	private static void measure(String name, String phase, Op op, Field[] fields, int iterations, long iterationMillis) {
+		long threadId = Thread.currentThread().getId();
+		double[] nanosPerOp = new double[iterations];
+		long totalOps = 0, totalBytes = 0, totalNanos = 0;
+		for (int i = -WARMUP_ITERATIONS; i < iterations; i++) {
+			long ops = 0;
+			long bytes = THREADS.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			long end = start + iterationMillis * 1000000L;
+			long now;
+			do {
+				long result = 0;
+				for (Field field : fields) {
+					result += op.run(field);
+				}
+				sink += result;
+				ops += fields.length;
+				now = System.nanoTime();
+			} while (now < end);
+			bytes = THREADS.getThreadAllocatedBytes(threadId) - bytes;
+			if (i >= 0) {
+				nanosPerOp[i] = (double) (now - start) / ops;
+				totalOps += ops;
+				totalBytes += bytes;
+				totalNanos += now - start;
+			}
+		}
+
+		double mean = (double) totalNanos / totalOps;
+		double variance = 0;
+		for (double n : nanosPerOp) {
+			variance += (n - mean) * (n - mean);
+		}
+		double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+		System.out.println(String.format("%-30s %-6s %14.1f %10.1f %12.1f %10.1f",
+				name, phase, mean, error, (double) totalBytes / totalOps,
+				totalBytes / 1048576.0 / (totalNanos / 1e9)));
+	}
+}
@@ -0,0 +1,124 @@
+package bot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * GameReplay class
+ *
+ * Feeds games written by GameRecorder (-Dbot.record=<path>) back through
+ * BotStarter.makeTurn, with the settings and time banks they were played with,
+ * and reports the latency of every move. Every move is searched on the field
+ * as it was recorded, whatever the replayed bot answers, so a recording is a
+ * fixed workload. Pondering and the opening book are not replayed.
+ *
+ * Run: java -cp bin bot.GameReplay <record> [-depth n] [-hash mb] [-quiet]
+ */
+
+public class GameReplay {
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("usage: GameReplay <record> [-depth n] [-hash mb] [-quiet]");
+			return;
+		}
+		int depth = 0;
+		int hash = 64;
+		boolean quiet = false;
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+			case "-depth": depth = Integer.parseInt(args[++i]); break;
+			case "-hash": hash = Integer.parseInt(args[++i]); break;
+			case "-quiet": quiet = true; break;
+			default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (System.getProperty("bot.hash") == null)
+			System.setProperty("bot.hash", Integer.toString(hash));
+		System.setProperty("bot.ponder", "false");
+
+		BotStarter bot = new BotStarter();
+		if (depth > 0)
+			bot.search.setMaxDepth(depth);
+
+		ByteBuffer record = ByteBuffer.wrap(Files.readAllBytes(Paths.get(args[0])));
+		Field field = new Field(0, 0);
+		long[] latencies = new long[64];
+		int moves = 0, same = 0, games = 0;
+		while (record.hasRemaining()) {
+			int tag = record.get() & 0xff;
+			if (tag < GameRecorder.SETTING) {
+				int column = tag & GameRecorder.COLUMN_MASK;
+				int botId = (tag & GameRecorder.PLAYER_2) != 0 ? 2 : 1;
+				if (column < field.getNrColumns() && !field.isColumnFull(column))
+					field.play(column, botId);
+			} else if (tag == GameRecorder.SETTING) {
+				int key = record.get();
+				int value = record.getInt();
+				switch (key) {
+				case GameRecorder.COLUMNS:
+					field.setColumns(value);
+					bot.search.clearTable();
+					games++;
+					break;
+				case GameRecorder.ROWS: field.setRows(value); break;
+				case GameRecorder.BOT_ID: bot.botId = value; break;
+				case GameRecorder.TIMEBANK: bot.time.setTimebank(value); break;
+				case GameRecorder.TIME_PER_MOVE: bot.time.setTimePerMove(value); break;
+				}
+			} else if (tag == GameRecorder.FIELD) {
+				StringBuilder cells = new StringBuilder();
+				for (int i = field.getNrColumns() * field.getNrRows(); i > 0; i--) {
+					cells.append(record.get()).append(',');
+				}
+				field.parseFromString(cells.toString());
+			} else if (tag == GameRecorder.ACTION) {
+				int timebank = record.getInt();
+				bot.field = new Field(field);
+				bot.time.startMove(timebank);
+				long start = System.nanoTime();
+				int column = bot.makeTurn();
+				long nanos = System.nanoTime() - start;
+				if (moves == latencies.length)
+					latencies = Arrays.copyOf(latencies, moves * 2);
+				latencies[moves++] = nanos;
+
+				// the recorded answer is the disc that follows
+				int recorded = -1;
+				if (record.hasRemaining() && (record.get(record.position()) & 0xff) < GameRecorder.SETTING)
+					recorded = record.get(record.position()) & GameRecorder.COLUMN_MASK;
+				if (column == recorded)
+					same++;
+				if (!quiet) {
+					System.out.println(String.format("game %d, disc %d: %8.2f ms, %s, depth %d, column %d (recorded %d)",
+							games, field.getNrDiscs() + 1, nanos / 1e6, bot.moveSource,
+							MoveEvent.SEARCH.equals(bot.moveSource) ? bot.search.getDepth() : 0, column, recorded));
+				}
+			} else {
+				throw new IOException("unknown record " + tag + " at " + (record.position() - 1));
+			}
+		}
+
+		if (moves == 0) {
+			System.out.println("no moves recorded");
+			return;
+		}
+		long[] sorted = Arrays.copyOf(latencies, moves);
+		Arrays.sort(sorted);
+		long total = 0;
+		for (long nanos : sorted) {
+			total += nanos;
+		}
+		System.out.println(String.format("%d games, %d moves, %d as recorded", games, moves, same));
+		System.out.println(String.format("move latency ms: mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, max %.2f",
+				total / 1e6 / moves, percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+				sorted[moves - 1] / 1e6));
+	}
+
+	private static double percentile(long[] sorted, int p) {
+		int index = (int) Math.min(sorted.length - 1, Math.ceil(p / 100.0 * sorted.length) - 1);
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+}
@@ -0,0 +1,45 @@
+package bot;
+
+/**
+ * Positions class
+ *
+ * Fixed 7x6 positions for the benchmarks, taken from self-play games.
+ * Player 1 is to move in all of them.
+ */
+
+public class Positions {
+	public static final int COLUMNS = 7;
+	public static final int ROWS = 6;
+	public static final int BOT_ID = 1;
+
+	public static final String[] EARLY = {
+		"0,0,0,0,0,0,0;0,0,0,0,0,0,0;0,0,0,0,0,0,0;0,0,0,0,0,0,0;0,0,0,0,0,2,0;0,1,2,1,1,2,0",
+		"0,0,0,0,0,0,0;0,0,0,0,0,0,0;0,0,0,0,0,0,0;0,0,0,2,0,0,0;0,0,0,2,0,1,0;0,0,0,1,0,2,1",
+		"0,0,0,0,0,0,0;0,0,0,0,0,0,0;0,2,1,0,0,0,0;0,1,2,0,0,0,0;0,1,2,1,0,0,2;0,1,2,1,0,0,2",
+	};
+
+	public static final String[] MID = {
+		"0,0,0,0,0,0,0;0,0,2,0,0,1,0;0,2,2,1,0,1,0;0,1,2,1,0,2,0;0,1,1,2,2,2,0;0,1,2,1,1,2,0",
+		"0,0,0,0,0,0,0;0,0,0,0,0,0,0;0,2,1,0,1,0,0;0,1,2,2,2,1,0;0,1,2,1,2,2,0;1,1,1,2,2,2,1",
+		"0,0,0,0,0,0,0;0,1,0,0,0,2,0;0,2,0,2,0,1,0;2,2,2,1,0,1,0;2,2,1,1,0,1,0;1,1,2,1,0,2,0",
+	};
+
+	public static final String[] LATE = {
+		"0,0,1,2,0,1,0;0,0,2,1,0,1,0;0,2,2,1,2,1,0;0,1,2,1,1,2,0;2,1,1,2,2,2,0;2,1,2,1,1,2,0",
+		"0,0,0,1,0,0,0;0,0,1,2,2,0,0;0,2,1,2,1,1,0;2,1,2,2,2,1,0;1,1,2,1,2,2,0;1,1,1,2,2,2,1",
+		"0,0,1,2,0,1,0;1,0,2,1,0,1,0;2,2,2,1,2,1,0;1,1,2,1,1,2,2;2,1,1,2,2,2,1;2,1,2,1,1,2,2",
+	};
+
+	/**
+	 * @param data : fields in the format of Field.parseFromString
+	 * @return the parsed fields
+	 */
+	public static Field[] parse(String[] data) {
+		Field[] fields = new Field[data.length];
+		for (int i = 0; i < data.length; i++) {
+			fields[i] = new Field(COLUMNS, ROWS);
+			fields[i].parseFromString(data[i]);
+		}
+		return fields;
+	}
+}
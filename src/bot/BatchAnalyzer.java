@@ -0,0 +1,428 @@
+package bot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * BatchAnalyzer class
+ *
+ * Finds the best move and score of every position in a file, on all cores.
+ * The reader hands positions to a pool of searching threads through a bounded
+ * queue and a writer puts the results back in input order as they come in. At
+ * most WINDOW positions are between the reader and the writer, so memory stays
+ * the same however long the input is. The searches share one transposition table,
+ * which ages once per batch rather than per position, so the deep entries of
+ * one worker aren't replaced by every other worker's shallow ones.
+ *
+ * Text input is one position per line, as written by Field.toString() or sent by
+ * the engine (cells split by ',', rows optionally by ';'), blank lines skipped.
+ * Binary input is fixed size records of 2 bits per cell, 4 cells per byte from
+ * the high bits down, cells in the same order as the text. Player 1 moves first,
+ * so the player to move follows from the number of discs.
+ *
+ * Output is one line per position: column, score and depth, "-1 0 0" for a
+ * full position and "error <reason>" for one that doesn't fit the size, has a
+ * disc above an empty cell, has disc counts no game can reach or already has 4
+ * in a row. Searches go 12 deep unless a depth or a time per position is given.
+ * A search that fails gives an error line as well; an Error in a worker stops
+ * the batch.
+ *
+ * Run: java -cp bin bot.BatchAnalyzer <in|-> [out] [-threads n] [-depth n]
+ *      [-time ms] [-hash mb] [-columns n] [-rows n] [-binary]
+ */
+
+public class BatchAnalyzer {
+	/** positions read but not yet written */
+	private static final int WINDOW = 1024;
+	private static final Task END = new Task(-1, null, null);
+	private static final String NO_MOVE = "-1 0 0";
+
+	private final int mCols, mRows;
+	private final int mThreads;
+	private final int mDepth;
+	private final long mTimeLimit;
+	private final TranspositionTable mTable;
+
+	private final BlockingQueue<Task> mTasks = new ArrayBlockingQueue<>(WINDOW);
+	private final Semaphore mWindow = new Semaphore(WINDOW);
+	private final String[] mResults = new String[WINDOW];
+	/** the first write error, later results are dropped so the reader never waits for the writer */
+	private IOException mFailure;
+	/** an Error of a worker, the reader and the writer stop when it is set */
+	private volatile Throwable mAbort;
+
+	private static final class Task {
+		final long index;
+		final String line;
+		final byte[] record;
+
+		Task(long index, String line, byte[] record) {
+			this.index = index;
+			this.line = line;
+			this.record = record;
+		}
+	}
+
+	/**
+	 * @param columns
+	 * @param rows
+	 * @param threads : searching threads
+	 * @param depth : search depth per position, Integer.MAX_VALUE for none
+	 * @param timeLimit : milliseconds per position, Long.MAX_VALUE for none
+	 * @param hashSize : megabytes for the shared transposition table
+	 */
+	public BatchAnalyzer(int columns, int rows, int threads, int depth, long timeLimit, int hashSize) {
+		mCols = columns;
+		mRows = rows;
+		mThreads = Math.max(1, threads);
+		mDepth = depth;
+		mTimeLimit = timeLimit;
+		mTable = new TranspositionTable(hashSize);
+	}
+
+	/**
+	 * analyzes every position of in and writes the results to out
+	 * @param in
+	 * @param out
+	 * @param binary : true for records of 2 bits per cell, false for lines of text
+	 * @return the number of positions
+	 * @throws IOException
+	 */
+	public long run(InputStream in, OutputStream out, boolean binary) throws IOException {
+		mTable.newSearch();
+		Thread[] workers = new Thread[mThreads];
+		for (int i = 0; i < mThreads; i++) {
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					work();
+				}
+			}, "analyzer-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 1 << 16);
+		final long[] total = { -1 };
+		Thread writerThread = new Thread(new Runnable() {
+			public void run() {
+				write(writer, total);
+			}
+		}, "analyzer-writer");
+		writerThread.start();
+
+		long count = 0;
+		try {
+			count = binary ? readBinary(in) : readText(in);
+		} finally {
+			if (mAbort != null)
+				mTasks.clear();
+			for (int i = 0; i < mThreads; i++) {
+				put(END);
+			}
+			synchronized (mResults) {
+				total[0] = count;
+				mResults.notifyAll();
+			}
+			join(writerThread);
+		}
+		if (mAbort != null)
+			throw new IOException("Analysis failed", mAbort);
+		if (mFailure != null)
+			throw mFailure;
+		return count;
+	}
+
+	private long readText(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII), 1 << 16);
+		long count = 0;
+		String line;
+		while ((line = reader.readLine()) != null && mAbort == null) {
+			line = line.trim();
+			if (line.isEmpty())
+				continue;
+			mWindow.acquireUninterruptibly();
+			if (mAbort != null)
+				break;
+			put(new Task(count++, line, null));
+		}
+		return count;
+	}
+
+	private long readBinary(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+		int size = (mCols * mRows + 3) / 4;
+		long count = 0;
+		while (mAbort == null) {
+			byte[] record = new byte[size];
+			int first = data.read();
+			if (first < 0)
+				break;
+			record[0] = (byte) first;
+			try {
+				data.readFully(record, 1, size - 1);
+			} catch (EOFException e) {
+				throw new IOException("Truncated record " + count);
+			}
+			mWindow.acquireUninterruptibly();
+			if (mAbort != null)
+				break;
+			put(new Task(count++, null, record));
+		}
+		return count;
+	}
+
+	private void put(Task task) {
+		while (true) {
+			try {
+				mTasks.put(task);
+				return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static void join(Thread thread) {
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/** searches positions until the end marker, every task taken gets a result */
+	private void work() {
+		Search search = new Search(mTable);
+		search.setMaxDepth(mDepth);
+		search.setTableAging(false);
+		Field field = new Field(mCols, mRows);
+		int[] cells = new int[mCols * mRows];
+		while (true) {
+			Task task;
+			try {
+				task = mTasks.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (task == END)
+				return;
+			String result = "error";
+			try {
+				result = analyze(search, field, cells, task);
+			} catch (RuntimeException e) {
+				result = "error " + e;
+			} catch (Error e) {
+				abort(e);
+				return;
+			} finally {
+				synchronized (mResults) {
+					mResults[(int) (task.index % WINDOW)] = result;
+					mResults.notifyAll();
+				}
+			}
+		}
+	}
+
+	/** stops the reader and the writer after an Error, keeping the first one */
+	private void abort(Throwable error) {
+		synchronized (mResults) {
+			if (mAbort == null)
+				mAbort = error;
+			mResults.notifyAll();
+		}
+		// the reader may wait for the window or for room in the queue
+		mTasks.clear();
+		mWindow.release(WINDOW);
+	}
+
+	/**
+	 * @return the result line of the task
+	 */
+	private String analyze(Search search, Field field, int[] cells, Task task) {
+		String error = (task.line != null) ? parse(task.line, cells) : unpack(task.record, cells);
+		if (error == null)
+			error = load(field, cells);
+		if (error != null)
+			return "error " + error;
+		if (field.isFull())
+			return NO_MOVE;
+		int botId = field.getNrDiscs() % 2 + 1;
+		int move = search.bestMove(field, botId, mTimeLimit);
+		return (move == -1) ? NO_MOVE : move + " " + search.getBestScore() + " " + search.getDepth();
+	}
+
+	/**
+	 * @param line : cells split by ',' or ';'
+	 * @param cells : receives the cells, top row first
+	 * @return what is wrong with the line, null if nothing
+	 */
+	private static String parse(String line, int[] cells) {
+		int cell = 0, value = -1;
+		for (int i = 0; i <= line.length(); i++) {
+			char c = (i < line.length()) ? line.charAt(i) : ',';
+			if (c >= '0' && c <= '2' && value == -1) {
+				value = c - '0';
+			} else if (c == ',' || c == ';') {
+				if (value == -1)
+					return "bad cell " + (cell + 1);
+				if (cell < cells.length)
+					cells[cell] = value;
+				cell++;
+				value = -1;
+			} else if (c != ' ') {
+				return "bad cell " + (cell + 1);
+			}
+		}
+		return (cell == cells.length) ? null : cell + " cells instead of " + cells.length;
+	}
+
+	/**
+	 * @param record : 2 bits per cell
+	 * @param cells : receives the cells, top row first
+	 * @return what is wrong with the record, null if nothing
+	 */
+	private static String unpack(byte[] record, int[] cells) {
+		for (int cell = 0; cell < cells.length; cell++) {
+			cells[cell] = (record[cell >> 2] >>> (6 - 2 * (cell & 3))) & 3;
+			if (cells[cell] == 3)
+				return "bad cell " + (cell + 1);
+		}
+		return null;
+	}
+
+	/**
+	 * @param field : receives the position
+	 * @param cells : top row first
+	 * @return why no game reaches the position, null if one can
+	 */
+	private String load(Field field, int[] cells) {
+		field.clearBoard();
+		// bottom row first, so every disc lands on the one below it
+		for (int y = mRows - 1; y >= 0; y--) {
+			for (int x = 0; x < mCols; x++) {
+				int disc = cells[y * mCols + x];
+				if (disc == 0)
+					continue;
+				if (field.rowIfAddDisc(x) != y)
+					return "disc above an empty cell in column " + x;
+				field.play(x, disc);
+				if (field.simpleWin(x, y, disc))
+					return "4 in a row for player " + disc;
+			}
+		}
+		// player 1 moves first, so it has as many discs as player 2 or one more
+		int discs1 = 0;
+		for (int cell : cells) {
+			if (cell == 1)
+				discs1++;
+		}
+		int discs2 = field.getNrDiscs() - discs1;
+		if (discs1 != discs2 && discs1 != discs2 + 1)
+			return "player 1 has " + discs1 + " discs, player 2 " + discs2;
+		return null;
+	}
+
+	/** writes the results in input order, flushing whenever it has to wait */
+	private void write(Writer writer, long[] total) {
+		for (long index = 0; ; index++) {
+			String result;
+			synchronized (mResults) {
+				int slot = (int) (index % WINDOW);
+				if (mResults[slot] == null && (total[0] < 0 || index < total[0])) {
+					flush(writer);
+					while (mResults[slot] == null && (total[0] < 0 || index < total[0]) && mAbort == null) {
+						try {
+							mResults.wait();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				}
+				result = mResults[slot];
+				mResults[slot] = null;
+			}
+			if (result == null)
+				break;
+			if (mFailure == null) {
+				try {
+					writer.write(result);
+					writer.write('\n');
+				} catch (IOException e) {
+					mFailure = e;
+				}
+			}
+			mWindow.release();
+		}
+		flush(writer);
+	}
+
+	private void flush(Writer writer) {
+		if (mFailure != null)
+			return;
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			mFailure = e;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("usage: BatchAnalyzer <in|-> [out] [-threads n] [-depth n] [-time ms]"
+					+ " [-hash mb] [-columns n] [-rows n] [-binary]");
+			return;
+		}
+		String in = args[0], out = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int depth = 0;
+		long time = Long.MAX_VALUE;
+		int hash = 64;
+		int columns = 7, rows = 6;
+		boolean binary = false;
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+			case "-threads": threads = Integer.parseInt(args[++i]); break;
+			case "-depth": depth = Integer.parseInt(args[++i]); break;
+			case "-time": time = Long.parseLong(args[++i]); break;
+			case "-hash": hash = Integer.parseInt(args[++i]); break;
+			case "-columns": columns = Integer.parseInt(args[++i]); break;
+			case "-rows": rows = Integer.parseInt(args[++i]); break;
+			case "-binary": binary = true; break;
+			default:
+				if (out != null || args[i].startsWith("-"))
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+				out = args[i];
+			}
+		}
+
+		if (depth == 0)
+			depth = (time == Long.MAX_VALUE) ? 12 : Integer.MAX_VALUE;
+
+		BatchAnalyzer analyzer = new BatchAnalyzer(columns, rows, threads, depth, time, hash);
+		long start = System.nanoTime();
+		long count;
+		try (InputStream input = in.equals("-") ? System.in : new FileInputStream(in);
+				OutputStream output = (out == null) ? System.out : new FileOutputStream(out)) {
+			count = analyzer.run(input, output, binary);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("%d positions in %.1f s, %.0f positions/s, %d threads%n",
+				count, seconds, count / seconds, threads);
+	}
+}
@@ -0,0 +1,171 @@
+package bot;
+
+/**
+ * Board class
+ *
+ * The discs of a Field as bitboards. Every column takes rows + 1 bits, bottom
+ * cell first; the extra bit on top keeps alignments from wrapping into the next
+ * column. Field picks the implementation when the size is set: LongBoard keeps
+ * a player in one long when the board fits in 64 bits, WideBoard spreads it over
+ * several longs holding whole columns each, so larger boards still work a line
+ * at a time with shifts instead of cell by cell.
+ *
+ * Sets of columns are returned as a long with bit c for column c, so boards can
+ * have at most 64 columns. Heights count from the bottom, starting at 0.
+ */
+
+abstract class Board {
+	static final int ANY_ROW = -1;
+	static final int EVEN_ROWS = 0;
+	static final int ODD_ROWS = 1;
+
+	final int cols, rows, stride;
+	/** Zobrist keys per player and bit, from a fixed seed so hashes are stable across runs */
+	final long[][] zobrist;
+
+	Board(int columns, int rows) {
+		this.cols = columns;
+		this.rows = rows;
+		this.stride = rows + 1;
+		zobrist = new long[2][columns * stride];
+		long seed = 0x2545F4914F6CDD1DL;
+		for (int p = 0; p < 2; p++) {
+			for (int i = 0; i < columns * stride; i++) {
+				seed += 0x9E3779B97F4A7C15L;
+				zobrist[p][i] = mix(seed);
+			}
+		}
+	}
+
+	/** copies share the layout and keys, which never change */
+	Board(Board b) {
+		cols = b.cols;
+		rows = b.rows;
+		stride = b.stride;
+		zobrist = b.zobrist;
+	}
+
+	/**
+	 * @param columns
+	 * @param rows
+	 * @return the fastest board for the size
+	 */
+	static Board create(int columns, int rows) {
+		if (columns > 64)
+			throw new IllegalArgumentException("Field " + columns + "x" + rows + " has more than 64 columns.");
+		if ((rows + 1) * columns <= 64)
+			return new LongBoard(columns, rows);
+		return new WideBoard(columns, rows);
+	}
+
+	private static long mix(long z) { // SplitMix64 finalizer
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @param column
+	 * @param height
+	 * @param botId
+	 * @return the Zobrist key of a disc of botId on the cell
+	 */
+	long key(int column, int height, int botId) {
+		return zobrist[botId - 1][column * stride + height];
+	}
+
+	/**
+	 * @param column
+	 * @param height
+	 * @param botId
+	 * @return the Zobrist key of the same disc on the board mirrored about the center column
+	 */
+	long mirrorKey(int column, int height, int botId) {
+		return zobrist[botId - 1][(cols - 1 - column) * stride + height];
+	}
+
+	abstract Board copy();
+
+	/** removes every disc */
+	abstract void clear();
+
+	/**
+	 * adds the disc of botId on the cell if it is empty, removes it if it is there
+	 * @param column
+	 * @param height
+	 * @param botId
+	 */
+	abstract void toggle(int column, int height, int botId);
+
+	/**
+	 * @param column
+	 * @param height
+	 * @return 0 for an empty cell, otherwise the botId of the disc
+	 */
+	abstract int getDisc(int column, int height);
+
+	/**
+	 * @param botId
+	 * @param column
+	 * @param height
+	 * @param dx : 0 along the column, 1 along the row
+	 * @param dy : 1 along the column, 0 along the row, 1 or -1 along a diagonal
+	 * @return true if botId has 4 aligned anywhere on the line through the cell
+	 */
+	boolean isAlignedOnLine(int botId, int column, int height, int dx, int dy) {
+		// back to where the line enters the board, then count runs along it
+		while (column - dx >= 0 && height - dy >= 0 && height - dy < rows) {
+			column -= dx;
+			height -= dy;
+		}
+		int run = 0;
+		for (; column < cols && height >= 0 && height < rows; column += dx, height += dy) {
+			run = (getDisc(column, height) == botId) ? run + 1 : 0;
+			if (run == 4)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param botId
+	 * @return the columns where dropping a disc of botId aligns 4
+	 */
+	abstract long winningColumns(int botId);
+
+	/**
+	 * @param botId
+	 * @return the columns where the cell right above the next disc would align 4 for botId,
+	 * so a disc there lets botId win
+	 */
+	abstract long threatenedColumns(int botId);
+
+	/**
+	 * @param botId
+	 * @param parity : ANY_ROW, ODD_ROWS or EVEN_ROWS, the bottom row is odd
+	 * @return the number of empty cells where botId would align 4, playable or not
+	 */
+	abstract int countWinningCells(int botId, int parity);
+
+	/**
+	 * @param botId
+	 * @param parity : ODD_ROWS or EVEN_ROWS
+	 * @return true if the discs of botId together with the empty cells on rows of the parity align 4
+	 */
+	abstract boolean alignsWithEmpty(int botId, int parity);
+
+	/**
+	 * @param first
+	 * @param second
+	 * @return true if first has a winning cell on an odd row with no winning cell of second below it
+	 */
+	abstract boolean hasUnopposedOddThreat(int first, int second);
+
+	/**
+	 * @param botId
+	 * @param heights : the number of discs per column
+	 * @return the fewest turns until botId plays the lower of two winning cells on top of each other,
+	 * Integer.MAX_VALUE if there are none
+	 */
+	abstract int stackedThreatTurns(int botId, int[] heights);
+}
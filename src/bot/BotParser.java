@@ -16,7 +16,10 @@
 //    file that was distributed with this source code.
 
 package bot;
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.concurrent.Semaphore;
 
 /**
  * MyBot class
@@ -44,54 +47,216 @@ action move 10000
 
 public class BotParser {
     
-	final Scanner scan;
+    private static final byte[] SETTINGS = ProtocolReader.bytes("settings");
+    private static final byte[] UPDATE = ProtocolReader.bytes("update");
+    private static final byte[] ACTION = ProtocolReader.bytes("action");
+    private static final byte[] FIELD_COLUMNS = ProtocolReader.bytes("field_columns");
+    private static final byte[] FIELD_ROWS = ProtocolReader.bytes("field_rows");
+    private static final byte[] YOUR_BOTID = ProtocolReader.bytes("your_botid");
+    private static final byte[] FIELD = ProtocolReader.bytes("field");
+    private static final byte[] ROUND = ProtocolReader.bytes("round");
+    private static final byte[] MOVE = ProtocolReader.bytes("move");
+    private static final byte[] TIMEBANK = ProtocolReader.bytes("timebank");
+    private static final byte[] TIME_PER_MOVE = ProtocolReader.bytes("time_per_move");
+    private static final byte[] PONDER = ProtocolReader.bytes("ponder");
+    private static final byte[] ENDGAME = ProtocolReader.bytes("endgame");
+    private static final byte[] ENGINE = ProtocolReader.bytes("engine");
+    
+	final ProtocolReader reader;
+	final PrintStream out;
     final BotStarter bot;
+    final OpeningBook book;
+    /** records the games, -Dbot.record=<path> to turn on */
+    final GameRecorder recorder;
+    /** permits to think, shared by the games of a server so they take turns on the cores, null for no limit */
+    final Semaphore cpu;
     
     private Field mField;
-    public static int mBotId = 0;
+    private int mRound;
+    /** runs from when the field size is known until the first move, -Dbot.warmup=0 to turn off */
+    private Warmup mWarmup;
 
     
     public BotParser(BotStarter bot) {
-		this.scan = new Scanner(System.in);
+		this(bot, System.in, System.out);
+	}
+    
+    public BotParser(BotStarter bot, InputStream in, PrintStream out) {
+		this(bot, in, out, new OpeningBook(System.getProperty("bot.book", "book.bin")),
+				openRecorder(System.getProperty("bot.record")), null);
+	}
+    
+    /**
+     * @param bot
+     * @param in : the engine's lines
+     * @param out : receives the replies
+     * @param book : may be shared, it is read only
+     * @param recorder : null to not record
+     * @param cpu : a permit is held while thinking, null for no limit
+     */
+    public BotParser(BotStarter bot, InputStream in, PrintStream out, OpeningBook book, GameRecorder recorder, Semaphore cpu) {
+		this.reader = new ProtocolReader(in);
+		this.out = out;
 		this.bot = bot;
+		this.book = book;
+		mField = new Field(0, 0);
+		this.recorder = recorder;
+		this.cpu = cpu;
+	}
+    
+    static GameRecorder openRecorder(String path) {
+		if (path == null)
+			return null;
+		try {
+			return new GameRecorder(path);
+		} catch (IOException e) {
+			System.err.println("Game record " + path + " ignored: " + e.getMessage());
+			return null;
+		}
 	}
     
     public void run() {
-        mField = new Field(0, 0);
-        while(scan.hasNextLine()) {
-            String line = scan.nextLine();
-
-            if(line.length() == 0) {
-                continue;
+        try {
+            while(reader.nextLine()) {
+                process();
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Handles one line of the engine protocol, replies go to the output stream
+     * @param line
+     */
+    public void process(String line) {
+        reader.load(line);
+        process();
+    }
+    
+    private void record(int key, int value) {
+        if (recorder != null) {
+            recorder.setting(key, value);
+        }
+    }
+    
+    /**
+     * Handles the line the reader is on
+     */
+    private void process() {
+        if(reader.tokens() == 0) {
+            return;
+        }
 
-            String[] parts = line.split(" ");
-            
-            if(parts[0].equals("settings")) {
-                if (parts[1].equals("field_columns")) {
-                    mField.setColumns(Integer.parseInt(parts[2]));
+        if(reader.is(0, SETTINGS)) {
+            if (reader.is(1, TIMEBANK)) {
+                bot.time.setTimebank(reader.parseInt(2));
+                record(GameRecorder.TIMEBANK, reader.parseInt(2));
+            }
+            if (reader.is(1, TIME_PER_MOVE)) {
+                bot.time.setTimePerMove(reader.parseInt(2));
+                record(GameRecorder.TIME_PER_MOVE, reader.parseInt(2));
+            }
+            if (reader.is(1, FIELD_COLUMNS)) {
+                mField.setColumns(reader.parseInt(2));
+                record(GameRecorder.COLUMNS, reader.parseInt(2));
+            }
+            if (reader.is(1, FIELD_ROWS)) {
+                mField.setRows(reader.parseInt(2));
+                record(GameRecorder.ROWS, reader.parseInt(2));
+            }
+            if ((reader.is(1, FIELD_COLUMNS) || reader.is(1, FIELD_ROWS)) && mWarmup == null) {
+                mWarmup = Warmup.start(mField.getNrColumns(), mField.getNrRows(), bot.engine);
+            }
+            if (reader.is(1, YOUR_BOTID)) {
+                bot.botId = reader.parseInt(2);
+                record(GameRecorder.BOT_ID, reader.parseInt(2));
+            }
+            if (reader.is(1, PONDER) && reader.tokens() > 2) {
+                bot.ponder = reader.token(2).equals("true");
+            }
+            if (reader.is(1, ENDGAME)) {
+                bot.endgameCells = reader.parseInt(2);
+            }
+            if (reader.is(1, ENGINE) && reader.tokens() > 2) {
+                bot.engine = reader.token(2);
+                if (mWarmup != null) {
+                    mWarmup.setEngine(bot.engine);
                 }
-                if (parts[1].equals("field_rows")) {
-                    mField.setRows(Integer.parseInt(parts[2]));
+            }
+        } else if(reader.is(0, UPDATE)) { /* new field data */
+            if (reader.is(2, ROUND)) {
+                mRound = reader.parseInt(3);
+            }
+            if (reader.is(2, FIELD) && reader.tokens() > 3) {
+                /* usually only the opponent's disc is new and gets played onto the field we have */
+                long hash = mField.getHash();
+                int column = mField.update(reader.data(), reader.start(3), reader.end(3));
+                if (column == Field.INVALID) {
+                    System.err.println(mField.getLastError() + " Field kept, line ignored: " + reader.line());
+                } else if (recorder != null) {
+                    if (column != -1) {
+                        int row = mField.isColumnFull(column) ? 0 : mField.rowIfAddDisc(column) + 1;
+                        recorder.disc(column, mField.getDisc(column, row));
+                    } else if (mField.getHash() != hash) {
+                        recorder.field(mField);
+                    }
                 }
-                if (parts[1].equals("your_botid")) {
-                    mBotId = Integer.parseInt(parts[2]);
+            }
+        } else if(reader.is(0, ACTION)) {
+            if (reader.is(1, MOVE)) { /* move requested */
+                int timebank = reader.tokens() > 2 ? reader.parseInt(2) : bot.time.getTimebank();
+                bot.time.startMove(timebank);
+                if (mWarmup != null) {
+                    mWarmup.stop();
+                    mWarmup = null;
                 }
-            } else if(parts[0].equals("update")) { /* new field data */
-                if (parts[2].equals("field")) {
-                    String data = parts[3];
-                    mField.parseFromString(data); /* Parse Field with data */
+                if (recorder != null) {
+                    recorder.action(timebank);
                 }
-            } else if(parts[0].equals("action")) {
-                if (parts[1].equals("move")) { /* move requested */
+                MoveEvent event = new MoveEvent();
+                event.begin();
+                bot.stopPondering();
+                String source = MoveEvent.BOOK;
+                int column = book.lookup(mField);
+                if (column == -1) {
                 	bot.field = new Field(mField);
-                    int column = bot.makeTurn();
-                    System.out.println("place_disc " + column);
+                	if (cpu != null) {
+                		cpu.acquireUninterruptibly();
+                	}
+                	try {
+                		column = bot.makeTurn();
+                	} finally {
+                		if (cpu != null) {
+                			cpu.release();
+                		}
+                	}
+                	source = bot.moveSource;
+                }
+                out.println("place_disc " + column);
+                if (event.shouldCommit()) {
+                    event.botId = bot.botId;
+                    event.round = mRound;
+                    event.column = column;
+                    event.source = source;
+                    event.timebank = timebank;
+                    event.commit();
+                }
+                /* keep our own disc, so the next update only adds the opponent's */
+                if (column >= 0 && column < mField.getNrColumns() && !mField.isColumnFull(column)) {
+                    mField.play(column, bot.botId);
+                    if (recorder != null) {
+                        recorder.disc(column, bot.botId);
+                    }
+                    bot.startPondering(mField, bot.botId % 2 + 1);
+                }
+                if (recorder != null) {
+                    recorder.flush();
                 }
             }
-            else { 
-                System.out.println("unknown command");
-            }
+        }
+        else { 
+            out.println("unknown command");
         }
     }
-}
\ No newline at end of file
+}
@@ -18,6 +18,12 @@
 package bot;
 
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.print.attribute.standard.MediaSize.Other;
 
 /**
@@ -31,6 +37,154 @@ import javax.print.attribute.standard.MediaSize.Other;
 
 public class BotStarter {	
     Field field;
+    int botId;
+    
+    /** splits the time bank over the moves */
+    final TimeManager time = new TimeManager();
+    /** megabytes for the transposition table, -Dbot.hash=<mb> to override */
+    final int HASH_SIZE;
+    
+    /** threads searching each move, -Dbot.threads=<n> to override */
+    final int THREADS;
+    
+    final Search search;
+    
+    /** positions with at most this many empty cells are solved, -Dbot.endgame=<cells> or "settings endgame <cells>" */
+    int endgameCells = Integer.getInteger("bot.endgame", 20);
+    
+    /** entries of the solver's table, 8 bytes each, an eighth of the transposition table's memory */
+    final int SOLVER_ENTRIES;
+    
+    final EndgameSolver solver;
+    
+    /** engines makeTurn() can use, -Dbot.engine=<engine> or "settings engine <engine>" */
+    static final String SEARCH = "search";
+    static final String MCTS = "mcts";
+    static final String HEURISTIC = "heuristic";
+    
+    /** one of SEARCH, MCTS or HEURISTIC, anything else is SEARCH */
+    String engine = System.getProperty("bot.engine", SEARCH);
+    
+    /** search while the opponent thinks, -Dbot.ponder=false or "settings ponder false" to turn off */
+    boolean ponder = Boolean.parseBoolean(System.getProperty("bot.ponder", "true"));
+    
+    /** how makeTurn() found its last move, one of the MoveEvent sources */
+    String moveSource;
+    
+    /** proven positions kept between games and processes, -Dbot.store=<path> to turn on */
+    String storePath = System.getProperty("bot.store");
+    
+    /** opened on first use for the size of the field, bots of one process share the mapping */
+    SolvedStore store;
+    
+    /** created when the engine is first used; its node pool is as large as the transposition table and comes on top of it */
+    private MonteCarloSearch mMonteCarlo;
+    
+    private ExecutorService mPonderer;
+    private Future<?> mPondering;
+    
+    public BotStarter() {
+    	this(Integer.getInteger("bot.hash", 64), Integer.getInteger("bot.threads", 1));
+    }
+    
+    /**
+     * @param hashSize : megabytes for the transposition table
+     * @param threads : threads searching each move
+     */
+    public BotStarter(int hashSize, int threads) {
+    	HASH_SIZE = hashSize;
+    	THREADS = threads;
+    	search = new Search(new TranspositionTable(HASH_SIZE));
+    	SOLVER_ENTRIES = HASH_SIZE << 14;
+    	solver = new EndgameSolver(SOLVER_ENTRIES);
+    	search.setThreads(THREADS);
+    }
+    
+    /**
+     * Searches the opponent's replies in the background until stopPondering() is called.
+     * Nothing is kept but the transposition table, where the next search finds the
+     * positions after each reply and their best moves.
+     *
+     * @param position : the field after our move, it is copied
+     * @param opponentId : the player to move
+     */
+    public void startPondering(Field position, final int opponentId) {
+    	stopPondering();
+    	if (!ponder || position.isFull() || !SEARCH.equals(engine))
+    		return;
+    	if (mPonderer == null) {
+    		mPonderer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    			public Thread newThread(Runnable r) {
+    				Thread thread = new Thread(r, "ponder");
+    				thread.setDaemon(true);
+    				return thread;
+    			}
+    		});
+    	}
+    	final Field copy = new Field(position);
+    	mPondering = mPonderer.submit(new Runnable() {
+    		public void run() {
+    			search.bestMove(copy, opponentId, Long.MAX_VALUE);
+    		}
+    	});
+    }
+    
+    /**
+     * Stops the background search and waits for it, so the search is free for makeTurn().
+     */
+    public void stopPondering() {
+    	if (mPondering == null)
+    		return;
+    	// a stop that comes before the search has started is lost, so keep asking
+    	while (!mPondering.isDone()) {
+    		search.stop();
+    		try {
+    			mPondering.get(1, TimeUnit.MILLISECONDS);
+    		} catch (TimeoutException e) {
+    		} catch (Exception e) {
+    			e.printStackTrace();
+    			break;
+    		}
+    	}
+    	mPondering = null;
+    }
+    
+    /**
+     * Stops pondering and releases the threads of this bot, e.g. when its game is over.
+     */
+    public void shutdown() {
+    	stopPondering();
+    	if (mPonderer != null) {
+    		mPonderer.shutdownNow();
+    		mPonderer = null;
+    	}
+    	search.setThreads(1);
+    	if (mMonteCarlo != null) {
+    		mMonteCarlo.setThreads(1);
+    	}
+    }
+    
+    /**
+     * @return the Monte Carlo engine, created on first use
+     */
+    MonteCarloSearch monteCarlo() {
+    	if (mMonteCarlo == null) {
+    		mMonteCarlo = new MonteCarloSearch(HASH_SIZE);
+    		mMonteCarlo.setThreads(THREADS);
+    	}
+    	return mMonteCarlo;
+    }
+    
+    /**
+     * @return the solved position store, opened on first use; null if there is none
+     */
+    SolvedStore store() {
+    	if (store == null && storePath != null) {
+    		store = SolvedStore.open(storePath, field.getNrColumns(), field.getNrRows());
+    		storePath = null;
+    	}
+    	return store;
+    }
     
     final int MAKE_SIMPLE_WIN = -4;
     final int COUNTER_SIMPLE_WIN = -3;
@@ -44,96 +198,174 @@ public class BotStarter {
      * @return The column where the turn was made.
      */
     public int makeTurn() {
+    	int move = forcedMove();
+    	if (move != -1) {
+    		moveSource = MoveEvent.FORCED;
+    		return move;
+    	}
+    	SolvedStore store = store();
+    	int known = EndgameSolver.UNKNOWN;
+    	if (store != null) {
+    		long slot = store.probe(field);
+    		known = SolvedStore.result(slot);
+    		move = field.canonicalColumn(SolvedStore.move(slot));
+    		if (known != EndgameSolver.LOSS && move >= 0 && move < field.getNrColumns() && !field.isColumnFull(move)) {
+    			moveSource = MoveEvent.STORE;
+    			return move;
+    		}
+    	}
+    	if (HEURISTIC.equals(engine)) {
+    		moveSource = MoveEvent.HEURISTIC;
+    		return heuristicTurn();
+    	}
+    	if (MCTS.equals(engine)) {
+    		moveSource = MoveEvent.MCTS;
+    		return monteCarlo().bestMove(field, botId, time.softLimit(field));
+    	}
+    	int emptyCells = field.getNrColumns() * field.getNrRows() - field.getNrDiscs();
+    	if (emptyCells <= endgameCells && known != EndgameSolver.LOSS) {
+    		// a lost position or a solver out of time leaves the rest of the time to the search
+    		move = solver.bestMove(field, botId, time.softLimit(field));
+    		if (store != null && solver.getResult() != EndgameSolver.UNKNOWN)
+    			store.put(field, solver.getResult(), move);
+    		if (move != -1) {
+    			moveSource = MoveEvent.SOLVER;
+    			return move;
+    		}
+    	}
+    	moveSource = MoveEvent.SEARCH;
+    	move = search.bestMove(field, botId, time.softLimit(field), time.hardLimit(field));
+    	// scores beyond any evaluation are wins or losses the search proved; a win needs only the
+    	// move that scored it searched in full, a loss every move, so only a completed iteration
+    	int cells = field.getNrColumns() * field.getNrRows();
+    	if (store != null && move != -1 && search.getBestScore() >= Search.WIN - cells)
+    		store.put(field, EndgameSolver.WIN, move);
+    	else if (store != null && move != -1 && search.isScoreExact() && search.getBestScore() <= -Search.WIN + cells)
+    		store.put(field, EndgameSolver.LOSS, -1);
+    	if (move == -1) {
+    		moveSource = MoveEvent.HEURISTIC;
+    		move = heuristicTurn();
+    	}
+    	return move;
+    }
+    
+    /**
+     * A move that needs no search: a win, the only block of an immediate loss or the only legal move.
+     *
+     * @return The column to play, -1 if the move needs a search.
+     */
+    public int forcedMove() {
+    	int enemyBotId = botId % 2 + 1;
+    	int legalMove = -1, legalMoves = 0;
+    	int block = -1, blocks = 0;
+    	for (int column = 0; column < field.getNrColumns(); column++) {
+    		if (field.isColumnFull(column))
+    			continue;
+    		if (field.isWinningMove(column, botId))
+    			return column;
+    		if (field.isWinningMove(column, enemyBotId)) {
+    			block = column;
+    			blocks++;
+    		}
+    		legalMove = column;
+    		legalMoves++;
+    	}
+    	if (blocks == 1)
+    		return block;
+    	return (legalMoves == 1) ? legalMove : -1;
+    }
+    
+    /**
+     * Rule cascade that picks a move by looking at most two moves ahead.
+     *
+     * @return The column where the turn was made.
+     */
+    public int heuristicTurn() {
     	int priority = Integer.MAX_VALUE;
 		int move = -1;
 		int moveFreedom = 0;
 		int turnsToComplexWin = Integer.MAX_VALUE;
-		int enemyBotId = BotParser.mBotId % 2 + 1;
+		int enemyBotId = botId % 2 + 1;
 		
 		for(int column = 0; column < field.getNrColumns() && priority > LOWEST_PRIORITY; column++){
-			System.err.println("\n" + "Examining column: " + column);
 			if(!(field.isColumnFull(column))){
 				int row = field.rowIfAddDisc(column);
 				
-				Field cloneField = new Field(field);
-				cloneField.addDisc(column, BotParser.mBotId);
-				
 				//go if simple win
-				if(cloneField.simpleWin(column, row, BotParser.mBotId)) {
+				field.play(column, botId);
+				boolean simpleWin = field.simpleWin(column, row, botId);
+				field.undo();
+				if(simpleWin) {
 					move = column;
 					priority = MAKE_SIMPLE_WIN;
-					System.err.println("winning");
 				} else {
 					
 					//go if blocks enemy simple win
-					Field enemyCloneField = new Field(field);
-					enemyCloneField.addDisc(column, enemyBotId);
-					if (enemyCloneField.simpleWin(column, row, enemyBotId)) {
+					field.play(column, enemyBotId);
+					boolean enemySimpleWin = field.simpleWin(column, row, enemyBotId);
+					int enemy_ttcw = -1;
+					if (!enemySimpleWin && priority > COUNTER_SIMPLE_WIN) {
+						enemy_ttcw = field.unavoidableWin(column, row, enemyBotId);
+					}
+					field.undo();
+					if (enemySimpleWin) {
 						move = column;
 						priority = COUNTER_SIMPLE_WIN;
-						System.err.println("not losing");
 					} else if(priority > COUNTER_SIMPLE_WIN) {
+						field.play(column, botId);
 						
 						//don't go if move helps enemy win on next turn
-						if(!cloneField.isColumnFull(column)){
-							Field futureField = new Field(cloneField);
-							int futureRow = futureField.rowIfAddDisc(column);
-							futureField.addDisc(column, enemyBotId);
-							if (futureField.simpleWin(column, futureRow, enemyBotId)
-									|| futureField.unavoidableWin(column, futureRow, enemyBotId) != -1
-									|| cloneField.unavoidableWin(column, row, enemyBotId) != -1){
-								System.err.println("Don't play, helps enemy win");
+						if(!field.isColumnFull(column)){
+							int futureRow = field.rowIfAddDisc(column);
+							field.play(column, enemyBotId);
+							boolean helpsEnemy = field.simpleWin(column, futureRow, enemyBotId)
+									|| field.unavoidableWin(column, futureRow, enemyBotId) != -1;
+							field.undo();
+							if (helpsEnemy || field.unavoidableWin(column, row, enemyBotId) != -1){
+								field.undo();
 								continue;
 							}
 						}
 						
 						//check if complex win or counters complex win
 						//note: the enemy takes one more turn to win since they play right after yourself, hence the +1
-						int ttcw = cloneField.unavoidableWin(column, row, BotParser.mBotId);
-						int enemy_ttcw = enemyCloneField.unavoidableWin(column, row, enemyBotId);
-						System.err.println("ttcw: " + ttcw + ", enemy_ttcw: " + enemy_ttcw);
+						int ttcw = field.unavoidableWin(column, row, botId);
 						if(ttcw != -1 && (ttcw < turnsToComplexWin 
 								|| (ttcw == turnsToComplexWin && priority == COUNTER_COMPLEX_WIN))) {
 							move = column;
 							if (enemy_ttcw != -1 && enemy_ttcw + 1 < ttcw){
 								priority = COUNTER_COMPLEX_WIN;
 								turnsToComplexWin = enemy_ttcw + 1;
-								System.err.println("not losing");
 							} else {
 								priority = MAKE_COMPLEX_WIN;
 								turnsToComplexWin = ttcw;
-								System.err.println("winning");
 							}
 						} else if (enemy_ttcw != -1 && enemy_ttcw + 1 < turnsToComplexWin) {
 							move = column;
 							priority = COUNTER_COMPLEX_WIN;
 							turnsToComplexWin = enemy_ttcw + 1;
-							System.err.println("not losing");
 						} else if (priority > 0){
 							
 							//check if it is a better move than before
 							int minPlayerTurnsToWin = Math.min(
-									Math.min(cloneField.verticalTurnsToWin(column, row, BotParser.mBotId),
-											cloneField.horizontalTurnsToWin(column, row, BotParser.mBotId)),
-									Math.min(cloneField.ascendingDiagonalTurnsToWin(column, row, BotParser.mBotId),
-											cloneField.descendingDiagonalTurnsToWin(column, row, BotParser.mBotId)));
-							System.err.println("minimum turns to win: " + minPlayerTurnsToWin);
-							int freeAdjacentSpaces = cloneField.freeAdjacentSpaces(column, row);
-							System.err.println("free spaces: " + freeAdjacentSpaces);
+									Math.min(field.verticalTurnsToWin(column, row, botId),
+											field.horizontalTurnsToWin(column, row, botId)),
+									Math.min(field.ascendingDiagonalTurnsToWin(column, row, botId),
+											field.descendingDiagonalTurnsToWin(column, row, botId)));
+							int freeAdjacentSpaces = field.freeAdjacentSpaces(column, row);
 							if(priority > minPlayerTurnsToWin 
 									|| (priority == minPlayerTurnsToWin && freeAdjacentSpaces > moveFreedom)){
 								move = column;
 								priority = minPlayerTurnsToWin;
 								moveFreedom = freeAdjacentSpaces;
-								System.err.println("Priority changed to " + priority);
 							}
 						}
+						field.undo();
 					}
 				}
 			}
 		}
 		if(move == -1){
-			System.err.println("No decent move, picking valid move...");
 			move = 3;
 			int i = 1;
 			int way = 1;
@@ -147,6 +379,10 @@ public class BotStarter {
     }
     
     public static void main(String[] args) {
+    	if (Integer.getInteger("bot.server") != null) {
+    		GameServer.main(args);
+    		return;
+    	}
     	BotParser parser = new BotParser(new BotStarter());
     	parser.run();
  	}
@@ -0,0 +1,240 @@
+package bot;
+
+import java.util.Arrays;
+
+/**
+ * EndgameSolver class
+ *
+ * Proves whether the player to move wins, draws or loses, searching to the end
+ * of the game. With only three outcomes every search is a null-window search:
+ * the root first asks "win?" and then, if not, "at least a draw?". Only moves
+ * that don't lose right away are tried, those that leave the most cells where
+ * the player would align 4 first, and ParityAnalyzer ends lines it can prove.
+ *
+ * Bounds are kept in a table of a fixed number of entries that is always
+ * overwritten, so memory stays bounded however large the endgame is.
+ */
+
+public class EndgameSolver {
+	/** outcomes, from the point of view of the player to move */
+	public static final int LOSS = -1;
+	public static final int DRAW = 0;
+	public static final int WIN = 1;
+	/** returned when the time ran out before a proof */
+	public static final int UNKNOWN = -2;
+
+	private static final int CHECK_NODES = 4095;
+	private static final long LOWER = 1, UPPER = 2;
+
+	private final long[] mTable;
+	private final int mTableMask;
+	private int mCols;
+	private int[][] mMoves = new int[0][];
+	private int[][] mScores = new int[0][];
+
+	private long mDeadline;
+	private boolean mStopped;
+	private long mNodes;
+	private int mResult = UNKNOWN;
+
+	/**
+	 * @param entries : size of the table, rounded down to a power of 2, 8 bytes each
+	 */
+	public EndgameSolver(int entries) {
+		int size = Integer.highestOneBit(Math.max(1, entries));
+		mTable = new long[size];
+		mTableMask = size - 1;
+	}
+
+	/**
+	 * solves the field and picks a move that keeps the best outcome
+	 * @param field
+	 * @param botId : the player to move
+	 * @param timeLimit : milliseconds the solver may take, Long.MAX_VALUE for no limit
+	 * @return the column to play, -1 if there is no legal move, the time ran out or the
+	 * position is lost, when any move will do and a search can look for the longest defence
+	 */
+	public int bestMove(Field field, int botId, long timeLimit) {
+		mDeadline = (timeLimit >= Long.MAX_VALUE / 1000000L) ? Long.MAX_VALUE
+				: System.nanoTime() + timeLimit * 1000000L;
+		mStopped = false;
+		mNodes = 0;
+		mResult = UNKNOWN;
+		if (field.isFull())
+			return -1;
+		resize(field);
+
+		int result = solve(field, botId);
+		if (mStopped)
+			return -1;
+		mResult = result;
+		if (result == LOSS)
+			return -1;
+
+		// a move whose position is worth at most -result to the opponent
+		int otherBotId = botId % 2 + 1;
+		for (int column = 0; column < field.getNrColumns(); column++) {
+			if (field.isColumnFull(column))
+				continue;
+			if (field.isWinningMove(column, botId))
+				return column;
+			field.play(column, botId);
+			boolean keeps = field.isFull() ? result == DRAW
+					: negamax(field, otherBotId, -result, -result + 1) <= -result;
+			field.undo();
+			if (mStopped)
+				return -1;
+			if (keeps)
+				return column;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param field
+	 * @param botId : the player to move
+	 * @return WIN, DRAW or LOSS for botId, UNKNOWN if the time ran out
+	 */
+	public int solve(Field field, int botId) {
+		if (mTable.length == 0 || field.isFull())
+			return DRAW;
+		resize(field);
+		int result = (negamax(field, botId, DRAW, WIN) > DRAW) ? WIN
+				: (negamax(field, botId, LOSS, DRAW) >= DRAW) ? DRAW : LOSS;
+		return mStopped ? UNKNOWN : result;
+	}
+
+	/**
+	 * @return the outcome of the last bestMove() for the player that moved, UNKNOWN if it wasn't proved
+	 */
+	public int getResult() {
+		return mResult;
+	}
+
+	/**
+	 * @return the number of nodes visited by the last bestMove()
+	 */
+	public long getNodes() {
+		return mNodes;
+	}
+
+	/**
+	 * forgets every cached bound
+	 */
+	public void clear() {
+		Arrays.fill(mTable, 0);
+	}
+
+	private void resize(Field field) {
+		int cells = field.getNrColumns() * field.getNrRows();
+		if (mCols == field.getNrColumns() && mMoves.length == cells + 1)
+			return;
+		mCols = field.getNrColumns();
+		mMoves = new int[cells + 1][mCols];
+		mScores = new int[cells + 1][mCols];
+		clear();
+	}
+
+	private int negamax(Field field, int botId, int alpha, int beta) {
+		if ((++mNodes & CHECK_NODES) == 0 && System.nanoTime() > mDeadline)
+			mStopped = true;
+		if (mStopped)
+			return DRAW;
+		if (field.canWinNext(botId))
+			return WIN;
+
+		// only moves that don't hand the opponent a win: blocks if it has to, never under its threats
+		int otherBotId = botId % 2 + 1;
+		long candidates = 0;
+		for (int column = 0; column < mCols; column++) {
+			if (!field.isColumnFull(column))
+				candidates |= 1L << column;
+		}
+		long forced = field.winningColumns(otherBotId);
+		if (forced != 0) {
+			if (Long.bitCount(forced) > 1)
+				return LOSS;
+			candidates = forced;
+		}
+		candidates &= ~field.threatenedColumns(otherBotId);
+		if (candidates == 0)
+			return LOSS;
+
+		int proof = ParityAnalyzer.prove(field, botId);
+		if (proof == ParityAnalyzer.WIN)
+			return WIN;
+		if (proof == ParityAnalyzer.LOSS)
+			return LOSS;
+		if (proof == ParityAnalyzer.AT_MOST_DRAW && beta > DRAW) {
+			beta = DRAW;
+			if (alpha >= beta)
+				return DRAW;
+		} else if (proof == ParityAnalyzer.AT_LEAST_DRAW && alpha < DRAW) {
+			alpha = DRAW;
+			if (alpha >= beta)
+				return DRAW;
+		}
+
+		long key = field.getKey();
+		int index = (int) (key ^ (key >>> 32)) & mTableMask;
+		long entry = mTable[index];
+		if (entry != 0 && (entry & ~0xfL) == (key & ~0xfL)) {
+			int value = (int) (entry & 3) - 2;
+			long bound = (entry >>> 2) & 3;
+			if (bound == LOWER && value > alpha) {
+				alpha = value;
+			} else if (bound == UPPER && value < beta) {
+				beta = value;
+			}
+			if (alpha >= beta)
+				return alpha;
+		}
+
+		int[] moves = mMoves[field.getNrDiscs()];
+		int[] scores = mScores[field.getNrDiscs()];
+		int count = 0;
+		for (int column = 0; column < mCols; column++) {
+			if ((candidates & (1L << column)) == 0)
+				continue;
+			field.play(column, botId);
+			// cells where botId would align 4, center first among equals
+			int score = field.countWinningCells(botId, Board.ANY_ROW) * 16 + mCols - Math.abs(2 * column - mCols + 1);
+			field.undo();
+			int i = count++;
+			while (i > 0 && scores[i - 1] < score) {
+				scores[i] = scores[i - 1];
+				moves[i] = moves[i - 1];
+				i--;
+			}
+			scores[i] = score;
+			moves[i] = column;
+		}
+
+		int alphaOrig = alpha;
+		int best = LOSS;
+		for (int i = 0; i < count; i++) {
+			field.play(moves[i], botId);
+			int score = field.isFull() ? DRAW : -negamax(field, otherBotId, -beta, -alpha);
+			field.undo();
+			if (score > best) {
+				best = score;
+				if (best > alpha) {
+					alpha = best;
+					if (alpha >= beta)
+						break;
+				}
+			}
+		}
+		if (mStopped)
+			return DRAW;
+		if (proof == ParityAnalyzer.AT_MOST_DRAW)
+			best = Math.min(best, DRAW);
+		else if (proof == ParityAnalyzer.AT_LEAST_DRAW)
+			best = Math.max(best, DRAW);
+
+		// best <= alphaOrig is an upper bound, best >= beta a lower bound, a null window leaves no exact case
+		long bound = (best <= alphaOrig) ? UPPER : LOWER;
+		mTable[index] = (key & ~0xfL) | (bound << 2) | (best + 2);
+		return best;
+	}
+}
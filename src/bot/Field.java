@@ -17,10 +17,9 @@
 
 package bot;
 
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.LinkedList;
-import java.util.Queue;
 
 /**
  * Field class
@@ -31,28 +30,43 @@ import java.util.Queue;
  */
 
 public class Field {	
-	private int[][] mBoard;
+	/** update() left the field as it was, the cells were no position */
+	public static final int INVALID = -2;
+	
+	private Board mBoard;
+	private WindowTable mWindows;
+	private long mHash = 0;
+	private long mMirrorHash = 0;
+	private int mDiscCount = 0;
+	private int[] mHeights;
+	private int[] mMoves;
+	private int mMoveCount = 0;
 	private int mCols = 0, mRows = 0;
 	private String mLastError = "";
 	public int mLastColumn = 0;
 	
 	public Field(int columns, int rows) {
-		mBoard = new int[columns][rows];
 		mCols = columns;
 		mRows = rows;
+		mBoard = Board.create(mCols, mRows);
+		mWindows = new WindowTable(mCols, mRows);
+		mHeights = new int[mCols];
+		mMoves = new int[mCols * mRows];
 		clearBoard();
 	}
 	
 	public Field(Field f){
 		mCols = f.mCols;
 		mRows = f.mRows;
-		mBoard = new int[mCols][mRows];
-		int j;
-		for(int i = 0; i < mCols; i++){
-			for(j = 0; j < mRows; j++){
-				mBoard[i][j] = f.getDisc(i, j);
-			}
-		}
+		mBoard = f.mBoard.copy();
+		mWindows = new WindowTable(f.mWindows);
+		mHash = f.mHash;
+		mMirrorHash = f.mMirrorHash;
+		mDiscCount = f.mDiscCount;
+		mHeights = f.mHeights.clone();
+		mMoves = f.mMoves.clone();
+		mMoveCount = f.mMoveCount;
+		mLastColumn = f.mLastColumn;
 	}
 	
 	/**
@@ -70,21 +84,63 @@ public class Field {
 	}
 	
 	/**
-	 * Sets the number of columns (this clears the board)
+	 * @return : Returns the number of discs on the field.
+	 */
+	public int getNrDiscs() {
+		return mDiscCount;
+	}
+	
+	/**
+	 * @return : Returns the Zobrist hash of the discs on the field.
+	 */
+	public long getHash() {
+		return mHash;
+	}
+	
+	/**
+	 * A position and its mirror image about the center column get the same key,
+	 * so caches and books can keep one entry for both. Moves stored under the key
+	 * go through canonicalColumn() on the way in and on the way out.
+	 * @return : Returns the smaller of the hash and the hash of the mirrored field.
+	 */
+	public long getKey() {
+		return Math.min(mHash, mMirrorHash);
+	}
+	
+	/**
+	 * Maps a column of this field to the matching column of the position getKey() stands for,
+	 * and back again, as mirroring twice changes nothing.
+	 * @param column : a column, or -1 for none
+	 * @return : the mirrored column if getKey() is the key of the mirrored field, otherwise column
+	 */
+	public int canonicalColumn(int column) {
+		return (column >= 0 && mMirrorHash < mHash) ? mCols - 1 - column : column;
+	}
+	
+	/**
+	 * Sets the number of columns (this clears the board and picks the board for the new size)
 	 * @param args : int cols
 	 */
 	public void setColumns(int cols) {
 		mCols = cols;
-		mBoard = new int[mCols][mRows];
+		mBoard = Board.create(mCols, mRows);
+		mWindows = new WindowTable(mCols, mRows);
+		mHeights = new int[mCols];
+		mMoves = new int[mCols * mRows];
+		clearBoard();
 	}
 
 	/**
-	 * Sets the number of rows (this clears the board)
+	 * Sets the number of rows (this clears the board and picks the board for the new size)
 	 * @param args : int rows
 	 */
 	public void setRows(int rows) {
 		mRows = rows;
-		mBoard = new int[mCols][mRows];
+		mBoard = Board.create(mCols, mRows);
+		mWindows = new WindowTable(mCols, mRows);
+		mHeights = new int[mCols];
+		mMoves = new int[mCols * mRows];
+		clearBoard();
 	}
 	
 	/**
@@ -95,12 +151,9 @@ public class Field {
 	public Boolean addDisc(int column, int botId) {
 		mLastError = "";
 		if (column < mCols) {
-			for (int y = mRows-1; y >= 0; y--) { // From bottom column up
-				if (mBoard[column][y] == 0) {
-					mBoard[column][y] = botId;
-					mLastColumn = column;
-					return true;
-				}
+			if (mHeights[column] < mRows) {
+				play(column, botId);
+				return true;
 			}
 			mLastError = "Column is full.";
 		} else {
@@ -109,18 +162,49 @@ public class Field {
 		return false;
 	}
 	
+	/**
+	 * Drops a disc in a column that is known not to be full, undo() takes it back
+	 * @param column
+	 * @param botId
+	 */
+	public void play(int column, int botId) {
+		int height = mHeights[column]++;
+		mBoard.toggle(column, height, botId);
+		mWindows.add(column, height, botId);
+		mHash ^= mBoard.key(column, height, botId);
+		mMirrorHash ^= mBoard.mirrorKey(column, height, botId);
+		mDiscCount++;
+		mMoves[mMoveCount++] = column;
+		mLastColumn = column;
+	}
+	
+	/**
+	 * Takes back the last disc added with play() or addDisc()
+	 * @return : the column of the disc, -1 if there is nothing to undo
+	 */
+	public int undo() {
+		if (mMoveCount == 0)
+			return -1;
+		int column = mMoves[--mMoveCount];
+		int height = --mHeights[column];
+		int botId = mBoard.getDisc(column, height);
+		mBoard.toggle(column, height, botId);
+		mWindows.remove(column, height, botId);
+		mHash ^= mBoard.key(column, height, botId);
+		mMirrorHash ^= mBoard.mirrorKey(column, height, botId);
+		mDiscCount--;
+		mLastColumn = (mMoveCount > 0) ? mMoves[mMoveCount - 1] : 0;
+		return column;
+	}
+	
 	/**
 	 * get row in which the disk will be if dropped in column
 	 * @param column
 	 * @return
 	 */
 	public int rowIfAddDisc(int column) {
-		if (column < mCols) {
-			for (int y = mRows-1; y >= 0; y--) { // From bottom column up
-				if (mBoard[column][y] == 0) {
-					return y;
-				}
-			}
+		if (column < mCols && mHeights[column] < mRows) {
+			return mRows - 1 - mHeights[column];
 		}
 		return -1;
 	}
@@ -132,67 +216,19 @@ public class Field {
 	 * @return
 	 */
 	public boolean verticalWin(int column, int botId){
-		int chainLength = 0;
-		int maxChainLength = 0;
-		for(int row = 0; row < mRows; row++){
-			if(getDisc(column, row) == botId) {
-				chainLength++;
-			} else {
-				maxChainLength = Math.max(maxChainLength, chainLength);
-				chainLength = 0;
-			}
-		}
-		maxChainLength = Math.max(maxChainLength, chainLength);
-		return (maxChainLength >= 4);
+		return mBoard.isAlignedOnLine(botId, column, 0, 0, 1);
 	}
 	
 	public boolean horizontalWin(int row, int botId){
-		int chainLength = 0;
-		int maxChainLength = 0;
-		for(int column = 0; column < mCols; column++){
-			if(getDisc(column, row) == botId) {
-				chainLength++;
-			} else {
-				maxChainLength = Math.max(maxChainLength, chainLength);
-				chainLength = 0;
-			}
-		}
-		maxChainLength = Math.max(maxChainLength, chainLength);
-		return (maxChainLength >= 4);
+		return mBoard.isAlignedOnLine(botId, 0, mRows - 1 - row, 1, 0);
 	}
 	
 	public boolean ascendingDiagonalWin(int column, int row, int botId){
-		int chainLength = 0;
-		int maxChainLength = 0;
-		int r = row + Math.min(column, mRows - 1 - row);
-		for(int c = column - Math.min(column, mRows - 1 - row); c < mCols && r >= 0; c++){
-			if(getDisc(c, r) == botId) {
-				chainLength++;
-			} else {
-				maxChainLength = Math.max(maxChainLength, chainLength);
-				chainLength = 0;
-			}
-			r--;
-		}
-		maxChainLength = Math.max(maxChainLength, chainLength);
-		return (maxChainLength >= 4);
+		return mBoard.isAlignedOnLine(botId, column, mRows - 1 - row, 1, 1);
 	}
 	
 	public boolean descendingDiagonalWin(int column, int row, int botId){
-		int chainLength = 0;
-		int maxChainLength = 0;
-		int r = row - Math.min(column, row);
-		for(int c = column - Math.min(column, row); c < mCols && r < mRows; c++){
-			if(getDisc(c, r) == botId) {
-				chainLength++;
-			} else {
-				maxChainLength = Math.max(maxChainLength, chainLength);
-				chainLength = 0;
-			}
-			r++;
-		}
-		maxChainLength = Math.max(maxChainLength, chainLength);
-		return (maxChainLength >= 4);
+		return mBoard.isAlignedOnLine(botId, column, mRows - 1 - row, 1, -1);
 	}
 	
 	/**
@@ -203,8 +239,11 @@ public class Field {
 	 * @return
 	 */
 	public boolean simpleWin(int column, int row, int botId){
-		return (verticalWin(column, botId) || horizontalWin(row, botId) 
-		|| ascendingDiagonalWin(column, row, botId) || descendingDiagonalWin(column, row, botId));
+		int height = mRows - 1 - row;
+		return mBoard.isAlignedOnLine(botId, column, height, 0, 1)
+				|| mBoard.isAlignedOnLine(botId, column, height, 1, 0)
+				|| mBoard.isAlignedOnLine(botId, column, height, 1, 1)
+				|| mBoard.isAlignedOnLine(botId, column, height, 1, -1);
 	}
 	
 	/**
@@ -262,48 +301,16 @@ public class Field {
 		return Integer.MAX_VALUE;
 	}
 	
+	/**
+	 * returns minimum number of discs to add in order to make a horizontal win if disc is placed in "column"
+	 * discards (returns MAX_VALUE) if chain can not attain 4 in the future
+	 * @param column
+	 * @param row
+	 * @param botId
+	 * @return
+	 */
 	public int horizontalTurnsToWin(int column, int row, int botId){
-		boolean chainContainsDisc = false;
-		int columnScore = 0;
-		int currChainScore = 0;
-		int minScore = 0;
-		Queue<Integer> queue = new LinkedList<>();
-		
-		for(int c = 0; c < mCols; c++) {
-			int currDisc = getDisc(c, row);
-			if(currDisc == botId || currDisc == 0){
-				if(c == column){
-					chainContainsDisc = true;
-				}
-				if(currDisc == botId) {
-					columnScore = 0;
-				} else {
-					columnScore = rowIfAddDisc(c) - row + 1;
-				}
-				queue.add(columnScore);
-				currChainScore += columnScore;
-				if(queue.size() == 4){
-					minScore = currChainScore;
-				} else if(queue.size() > 4){
-					currChainScore -= queue.poll();
-					minScore = Math.min(minScore, currChainScore);
-				}
-			} else if(!chainContainsDisc) {
-				queue.clear();
-				columnScore = 0;
-				currChainScore = 0;
-				minScore = 0;
-			}
-			
-			if(currDisc != 0 && currDisc != botId && chainContainsDisc)
-				break;	
-		}
-		
-		if(queue.size() >= 4) {
-			//System.err.println("h: " + minScore);
-			return minScore;
-		}
-		return Integer.MAX_VALUE;
+		return mWindows.turnsToWin(WindowTable.HORIZONTAL, column, mRows - 1 - row, botId, mHeights);
 	}
 	
 	/**
@@ -315,50 +322,7 @@ public class Field {
 	 * @return
 	 */
 	public int descendingDiagonalTurnsToWin(int column, int row, int botId){
-		boolean chainContainsDisc = false;
-		int columnScore = 0;
-		int currChainScore = 0;
-		int minScore = 0;
-		Queue<Integer> queue = new LinkedList<>();
-
-		int r = row - Math.min(column, row);
-		for(int c = column - Math.min(column, row); c < mCols && r < mRows; c++) {
-			int currDisc = getDisc(c, r);
-			if(currDisc == botId || currDisc == 0){
-				if(c == column){
-					chainContainsDisc = true;
-				}
-				if(currDisc == botId) {
-					columnScore = 0;
-				} else {
-					columnScore = rowIfAddDisc(c) - r + 1;
-				}				
-				queue.add(columnScore);
-				currChainScore += columnScore;
-				if(queue.size() == 4){
-					minScore = currChainScore;
-				} else if(queue.size() > 4){
-					currChainScore -= queue.poll();
-					minScore = Math.min(minScore, currChainScore);
-				}
-			} else if(!chainContainsDisc) {
-				queue.clear();
-				columnScore = 0;
-				currChainScore = 0;
-				minScore = 0;
-			}
-			
-			if(currDisc != 0 && currDisc != botId && chainContainsDisc)
-				break;	
-			
-			r++;
-		}
-		
-		if(queue.size() >= 4) {
-			//System.err.println("d: " + minScore);
-			return minScore;
-		}
-		return Integer.MAX_VALUE;
+		return mWindows.turnsToWin(WindowTable.DESCENDING, column, mRows - 1 - row, botId, mHeights);
 	}
 	
 	/**
@@ -369,50 +333,68 @@ public class Field {
 	 * @param botId
 	 * @return
 	 */
-	public int ascendingDiagonalTurnsToWin(int column, int row, int botId){		
-		boolean chainContainsDisc = false;
-		int columnScore = 0;
-		int currChainScore = 0;
-		int minScore = 0;
-		Queue<Integer> queue = new LinkedList<>();
-		
-		int r = row + Math.min(column, mRows - 1 - row);
-		for(int c = column - Math.min(column, mRows -1 - row); c < mCols && r >= 0; c++) {
-			int currDisc = getDisc(c, r);
-			if(currDisc == botId || currDisc == 0){
-				if(c == column){
-					chainContainsDisc = true;
-				}
-				if(currDisc == botId) {
-					columnScore = 0;
-				} else {
-					columnScore = rowIfAddDisc(c) - r + 1;
-				}
-				queue.add(columnScore);
-				currChainScore += columnScore;
-				if(queue.size() == 4){
-					minScore = currChainScore;
-				} else if(queue.size() > 4){
-					currChainScore -= queue.poll();
-					minScore = Math.min(minScore, currChainScore);
-				}
-			} else if(!chainContainsDisc) {
-				queue.clear();
-				columnScore = 0;
-				currChainScore = 0;
-				minScore = 0;
-			}
-			
-			if(currDisc != 0 && currDisc != botId && chainContainsDisc)
-				break;
-			r--;
-		}
-		
-		if(queue.size() >= 4) {
-			//System.err.println("a: " + minScore);
-			return minScore;
-		}
-		return Integer.MAX_VALUE;
+	public int ascendingDiagonalTurnsToWin(int column, int row, int botId){
+		return mWindows.turnsToWin(WindowTable.ASCENDING, column, mRows - 1 - row, botId, mHeights);
+	}
+	
+	/**
+	 * @param botId
+	 * @return : true if botId can align 4 with the next disc
+	 */
+	public boolean canWinNext(int botId) {
+		return mBoard.winningColumns(botId) != 0;
+	}
+	
+	/**
+	 * @param column
+	 * @param botId
+	 * @return : true if dropping a disc of botId in column aligns 4
+	 */
+	public boolean isWinningMove(int column, int botId) {
+		return (mBoard.winningColumns(botId) & (1L << column)) != 0;
+	}
+	
+	/**
+	 * @param botId
+	 * @return : the columns where dropping a disc of botId aligns 4, bit c for column c
+	 */
+	long winningColumns(int botId) {
+		return mBoard.winningColumns(botId);
+	}
+	
+	/**
+	 * @param botId
+	 * @return : the columns where a disc lets botId align 4 right on top of it, bit c for column c
+	 */
+	long threatenedColumns(int botId) {
+		return mBoard.threatenedColumns(botId);
+	}
+	
+	/**
+	 * @param botId
+	 * @param parity : Board.ANY_ROW, Board.ODD_ROWS or Board.EVEN_ROWS, the bottom row is odd
+	 * @return : the number of empty cells where botId would align 4, playable or not
+	 */
+	int countWinningCells(int botId, int parity) {
+		return mBoard.countWinningCells(botId, parity);
+	}
+	
+	/**
+	 * @param botId
+	 * @param parity : Board.ODD_ROWS or Board.EVEN_ROWS, the bottom row is odd
+	 * @return : true if the discs of botId and the empty cells on rows of the parity align 4
+	 */
+	boolean alignsWithEmpty(int botId, int parity) {
+		return mBoard.alignsWithEmpty(botId, parity);
+	}
+	
+	/**
+	 * @param first
+	 * @param second
+	 * @return : true if first can align 4 on an odd row with no such cell of second below it
+	 */
+	boolean hasUnopposedOddThreat(int first, int second) {
+		return mBoard.hasUnopposedOddThreat(first, second);
 	}
 	
 	/**
@@ -423,68 +405,12 @@ public class Field {
 	 * @return
 	 */
 	int unavoidableWin(int column, int row, int botId){
-		/*if(row >= 2){
-			cloneField.addDisc(column, botId);
-			if(simpleWin(column, row - 1, botId)){
-				cloneField = new Field(this);
-				cloneField.addDisc(column, botId % 2 + 1);
-				cloneField.addDisc(column, botId);
-				if (simpleWin(column, row - 2, botId)){
-					System.err.println("complex win 1 for player " + botId);
-					return true;
-				}
-			}
-		}*/
-		
-		int turnsToWin = Integer.MAX_VALUE;
-		
 		//complex win 1: if two following positions in any column can align 4 on the next turn (can't be blocked)
-		Field cloneField;
-		Field futureField;
-		int futureRow;
-		int otherBotId = botId % 2 + 1;
-		for(int c = 0; c < mCols; c++){
-			if (!(isColumnFull(c))) {
-				cloneField = new Field(this);
-				futureRow = cloneField.rowIfAddDisc(c);
-				if(futureRow >= 1){
-					for(int r = futureRow; r >= 1; r--){
-						cloneField = new Field(this);
-						for(int i = 0; i < futureRow - r; i++){
-							cloneField.addDisc(c, otherBotId);
-						}
-						futureField = new Field(cloneField);
-						futureField.addDisc(c, botId);
-						if(futureField.simpleWin(c, r, botId)){
-							futureField = new Field(cloneField);
-							futureField.addDisc(c, otherBotId);
-							futureField.addDisc(c, botId);
-							if (futureField.simpleWin(c, r - 1, botId)){
-								System.err.println("complex win 1 for player " + botId);
-								turnsToWin = Math.min(turnsToWin, 2 * (futureRow - r + 1));
-							}
-						}
-					}
-				}
-			}
-		}
+		//the other player has to fill the column below the lower one first
+		int turnsToWin = mBoard.stackedThreatTurns(botId, mHeights);
 		
 		//complex win 2: if two positions are available to align 4 on the next turn (can't be blocked)
-		int winningPos = 0;
-		for(int c = 0; c < mCols; c++){
-			if(!(isColumnFull(c))){
-				cloneField = new Field(this);
-				int r = cloneField.rowIfAddDisc(c);
-				cloneField.addDisc(c, botId);
-				if(cloneField.simpleWin(c, r, botId)){
-					winningPos++;
-					if (winningPos >= 2)
-						break;
-				}
-			}
-		}
-		if(winningPos >= 2){
-			System.err.println("complex win 2 for player " + botId);
+		if(Long.bitCount(mBoard.winningColumns(botId)) >= 2){
 			turnsToWin = Math.min(turnsToWin, 2);
 		}
 		
@@ -499,7 +425,7 @@ public class Field {
 	 * @return : int
 	 */
 	public int getDisc(int column, int row) {
-		return mBoard[column][row];
+		return mBoard.getDisc(column, mRows - 1 - row);
 	}
 	
 	/**
@@ -507,7 +433,7 @@ public class Field {
 	 * @return : Returns true when given column is full, otherwise returns false.
 	 */
 	public boolean isColumnFull(int column) {
-		return (mBoard[column][0] != 0);
+		return (mHeights[column] == mRows);
 	}
 	
 	/**
@@ -515,22 +441,21 @@ public class Field {
 	 * @return : Returns true when field is full, otherwise returns false.
 	 */
 	public boolean isFull() {
-		for (int x = 0; x < mCols; x++)
-		  //for (int y = 0; y < mRows; y++)
-		    if (mBoard[x][0] == 0)
-		      return false; // At least one cell is not filled
-		// All cells are filled
-		return true;
+		return (mDiscCount == mCols * mRows);
 	}
 	
 	/**
 	 * Clear the board
 	 */
 	public void clearBoard() {
+		mBoard.clear();
+		mWindows.clear();
+		mHash = 0;
+		mMirrorHash = 0;
+		mDiscCount = 0;
+		mMoveCount = 0;
 		for (int x = 0; x < mCols; x++) {
-			for (int y = 0; y < mRows; y++) {
-				mBoard[x][y] = 0;
-			}
+			mHeights[x] = 0;
 		}
 	}
 	
@@ -550,34 +475,126 @@ public class Field {
 	 * @return : String
 	 */
 	public String toString() {
-		String r = "";
-		int counter = 0;
+		StringBuilder r = new StringBuilder(2 * mCols * mRows);
 		for (int y = 0; y < mRows; y++) {
 			for (int x = 0; x < mCols; x++) {
-				if (counter > 0) {
-					r += ",";
+				if (r.length() > 0) {
+					r.append(',');
 				}
-				r += mBoard[x][y];
-				counter++;
+				r.append(getDisc(x, y));
 			}
 		}
-		return r;
+		return r.toString();
 	}
 	
 	/**
-	 * Initialise field from comma separated String
+	 * Initialise field from comma separated String, a String that is no position is ignored
 	 * @param String : 
 	 */
 	public void parseFromString(String s) {
-		s = s.replace(';', ',');
-		String[] r = s.split(",");
-		int counter = 0;
-		for (int y = 0; y < mRows; y++) {
-			for (int x = 0; x < mCols; x++) {
-				mBoard[x][y] = Integer.parseInt(r[counter]); 
-				counter++;
+		byte[] data = s.getBytes(StandardCharsets.US_ASCII);
+		update(data, 0, data.length, false);
+	}
+	
+	/**
+	 * Updates the field from the cells the engine sends (rows split by ';', cells by ',').
+	 * If the only change is one disc on top of a column it is played like any other move,
+	 * so the hash and the move stack stay valid, otherwise the field is rebuilt. Cells other
+	 * than 0, 1 and 2 or a disc above an empty cell leave the field as it is, getLastError() says why.
+	 * @param data : buffer holding the cells
+	 * @param start : offset of the first cell
+	 * @param end : offset after the last cell
+	 * @return : the column of the single new disc, -1 if nothing changed or the field was rebuilt,
+	 * INVALID if the cells were ignored
+	 */
+	public int update(byte[] data, int start, int end) {
+		return update(data, start, end, true);
+	}
+	
+	private int update(byte[] data, int start, int end, boolean incremental) {
+		String error = check(data, start, end);
+		if (error != null) {
+			mLastError = error;
+			return INVALID;
+		}
+		// first compare with the field as it is, a single new disc on top of a column is played
+		int added = -1, addedBotId = 0;
+		boolean rebuild = !incremental;
+		int cell = 0, value = 0, cells = mCols * mRows;
+		for (int i = start; i <= end && cell < cells && !rebuild; i++) {
+			byte b = (i < end) ? data[i] : (byte) ',';
+			if (b >= '0' && b <= '9') {
+				value = value * 10 + (b - '0');
+			} else if (b == ',' || b == ';') {
+				int x = cell % mCols, y = cell / mCols;
+				int disc = getDisc(x, y);
+				if (value != disc) {
+					if (disc != 0 || added != -1 || y != rowIfAddDisc(x)) {
+						rebuild = true;
+					} else {
+						added = x;
+						addedBotId = value;
+					}
+				}
+				cell++;
+				value = 0;
+			}
+		}
+		if (!rebuild) {
+			if (added != -1)
+				play(added, addedBotId);
+			return added;
+		}
+		
+		clearBoard();
+		cell = 0;
+		value = 0;
+		for (int i = start; i <= end && cell < cells; i++) {
+			byte b = (i < end) ? data[i] : (byte) ',';
+			if (b >= '0' && b <= '9') {
+				value = value * 10 + (b - '0');
+			} else if (b == ',' || b == ';') {
+				if (value == 1 || value == 2) {
+					int x = cell % mCols, height = mRows - 1 - cell / mCols;
+					mBoard.toggle(x, height, value);
+					mWindows.add(x, height, value);
+					mHash ^= mBoard.key(x, height, value);
+					mMirrorHash ^= mBoard.mirrorKey(x, height, value);
+					mHeights[x]++;
+					mDiscCount++;
+				}
+				cell++;
+				value = 0;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return why the cells are no position, null if they are one
+	 */
+	private String check(byte[] data, int start, int end) {
+		// rows come top first, so a column with a disc may not have an empty cell further down
+		long discColumns = 0;
+		int cell = 0, value = 0, cells = mCols * mRows;
+		for (int i = start; i <= end && cell < cells; i++) {
+			byte b = (i < end) ? data[i] : (byte) ',';
+			if (b >= '0' && b <= '9') {
+				value = value * 10 + (b - '0');
+				if (value > 2)
+					return "Bad cell " + (cell + 1) + ".";
+			} else if (b == ',' || b == ';') {
+				int x = cell % mCols;
+				if (value != 0) {
+					discColumns |= 1L << x;
+				} else if ((discColumns & 1L << x) != 0) {
+					return "Disc above an empty cell in column " + x + ".";
+				}
+				cell++;
+				value = 0;
 			}
 		}
+		return null;
 	}
 	
 }
@@ -0,0 +1,125 @@
+package bot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * GameRecorder class
+ *
+ * Appends what the engine tells the bot to a compact binary file, so games can
+ * be replayed offline (see GameReplay in bench). Every disc is one byte: the
+ * column in the low 6 bits, bit 6 set for player 2. Other records start with a
+ * tag byte:
+ *
+ * SETTING, byte key, int value : one of the settings the bot uses
+ * FIELD, one byte per cell     : the whole field, when it is not the last field plus one disc
+ * ACTION, int timebank         : a move was requested with timebank milliseconds left
+ *
+ * Records are collected in a buffer and written once per move, after the reply.
+ */
+
+public class GameRecorder {
+	static final int SETTING = 0xF0;
+	static final int FIELD = 0xF1;
+	static final int ACTION = 0xF2;
+
+	static final int COLUMNS = 0;
+	static final int ROWS = 1;
+	static final int BOT_ID = 2;
+	static final int TIMEBANK = 3;
+	static final int TIME_PER_MOVE = 4;
+
+	static final int PLAYER_2 = 0x40;
+	static final int COLUMN_MASK = 0x3F;
+
+	private final FileChannel mChannel;
+	private ByteBuffer mBuffer = ByteBuffer.allocate(8192);
+
+	/**
+	 * opens path for appending, creating it if needed
+	 * @param path
+	 * @throws IOException
+	 */
+	public GameRecorder(String path) throws IOException {
+		mChannel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * @param key : COLUMNS, ROWS, BOT_ID, TIMEBANK or TIME_PER_MOVE
+	 * @param value
+	 */
+	public void setting(int key, int value) {
+		reserve(6);
+		mBuffer.put((byte) SETTING).put((byte) key).putInt(value);
+	}
+
+	/**
+	 * @param column
+	 * @param botId : the player of the disc
+	 */
+	public void disc(int column, int botId) {
+		reserve(1);
+		mBuffer.put((byte) ((column & COLUMN_MASK) | (botId == 2 ? PLAYER_2 : 0)));
+	}
+
+	/**
+	 * records the whole field
+	 * @param field
+	 */
+	public void field(Field field) {
+		reserve(1 + field.getNrColumns() * field.getNrRows());
+		mBuffer.put((byte) FIELD);
+		for (int y = 0; y < field.getNrRows(); y++) {
+			for (int x = 0; x < field.getNrColumns(); x++) {
+				mBuffer.put((byte) field.getDisc(x, y));
+			}
+		}
+	}
+
+	/**
+	 * @param timebank : milliseconds left when the move was requested
+	 */
+	public void action(int timebank) {
+		reserve(5);
+		mBuffer.put((byte) ACTION).putInt(timebank);
+	}
+
+	/**
+	 * writes the records collected so far
+	 */
+	public void flush() {
+		mBuffer.flip();
+		try {
+			while (mBuffer.hasRemaining()) {
+				mChannel.write(mBuffer);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		mBuffer.clear();
+	}
+
+	/**
+	 * writes what is left and closes the file
+	 */
+	public void close() {
+		flush();
+		try {
+			mChannel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void reserve(int bytes) {
+		if (mBuffer.remaining() >= bytes)
+			return;
+		flush();
+		if (mBuffer.capacity() < bytes)
+			mBuffer = ByteBuffer.allocate(bytes);
+	}
+}
@@ -0,0 +1,166 @@
+package bot;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GameServer class
+ *
+ * Hosts many games in one JVM. Every connection on a local socket is one game:
+ * the engine writes the usual protocol lines and reads the replies, and the game
+ * gets its own BotParser, BotStarter and Field. The opening book is loaded once
+ * and shared, it is read only.
+ *
+ * Games run on virtual threads when the JVM has them (Java 21 and later, found
+ * by reflection so the bot still runs on Java 11) and on platform threads
+ * otherwise; a game mostly waits for the engine, so either is cheap. Thinking
+ * takes a permit of a fair semaphore with one permit per core: a game searches
+ * on one thread at a time and games waiting for a core get it in the order they
+ * asked. The wait counts against the game's time like any other delay. Games
+ * don't ponder by default, that would take the cores from games that are moving.
+ *
+ * Run: java -Dbot.server=<port> -cp bin bot.BotStarter
+ * Options: -Dbot.session.hash=<mb> table per game (4), -Dbot.session.ponder=true,
+ * -Dbot.cores=<n> games thinking at once (all cores), -Dbot.record=<path> records
+ * game n to <path>.<n>, -Dbot.store=<path> a solved position store for all games
+ * (made for the size of the first game that uses it, games of other sizes go without).
+ */
+
+public class GameServer {
+	private final ServerSocket mSocket;
+	private final OpeningBook mBook;
+	private final Semaphore mCpu;
+	private final ExecutorService mSessions;
+	private final int mHashSize = Integer.getInteger("bot.session.hash", 4);
+	private final boolean mPonder = Boolean.getBoolean("bot.session.ponder");
+	private final String mRecord = System.getProperty("bot.record");
+	private final AtomicInteger mGames = new AtomicInteger();
+	private final AtomicInteger mActive = new AtomicInteger();
+
+	/**
+	 * @param port : listens on this port of the loopback address, 0 for any free port
+	 * @param book : shared by every game
+	 * @param cores : games that may think at once
+	 * @throws IOException
+	 */
+	public GameServer(int port, OpeningBook book, int cores) throws IOException {
+		mSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+		mBook = book;
+		mCpu = new Semaphore(Math.max(1, cores), true);
+		mSessions = newSessionExecutor();
+	}
+
+	/**
+	 * @return a thread per task executor, of virtual threads if the JVM has them
+	 */
+	static ExecutorService newSessionExecutor() {
+		try {
+			Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtual.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger mCount = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "game-" + mCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return the port the server listens on
+	 */
+	public int getPort() {
+		return mSocket.getLocalPort();
+	}
+
+	/**
+	 * @return the number of games being played
+	 */
+	public int getActiveGames() {
+		return mActive.get();
+	}
+
+	/**
+	 * accepts games until the server is closed
+	 */
+	public void run() {
+		while (!mSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = mSocket.accept();
+			} catch (IOException e) {
+				if (!mSocket.isClosed())
+					e.printStackTrace();
+				break;
+			}
+			final int game = mGames.incrementAndGet();
+			mSessions.execute(new Runnable() {
+				public void run() {
+					play(socket, game);
+				}
+			});
+		}
+	}
+
+	/**
+	 * stops accepting games, games being played go on until the engine closes them
+	 */
+	public void close() {
+		try {
+			mSocket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		mSessions.shutdown();
+	}
+
+	private void play(Socket socket, int game) {
+		mActive.incrementAndGet();
+		BotStarter bot = null;
+		GameRecorder recorder = null;
+		try (Socket s = socket) {
+			bot = new BotStarter(mHashSize, 1);
+			bot.ponder = mPonder;
+			if (mRecord != null)
+				recorder = BotParser.openRecorder(mRecord + "." + game);
+			s.setTcpNoDelay(true);
+			PrintStream out = new PrintStream(new BufferedOutputStream(s.getOutputStream()), true, StandardCharsets.US_ASCII.name());
+			new BotParser(bot, s.getInputStream(), out, mBook, recorder, mCpu).run();
+		} catch (IOException e) {
+			System.err.println("Game " + game + " ended: " + e.getMessage());
+		} finally {
+			if (bot != null)
+				bot.shutdown();
+			if (recorder != null)
+				recorder.close();
+			mActive.decrementAndGet();
+		}
+	}
+
+	public static void main(String[] args) {
+		int port = Integer.getInteger("bot.server", 0);
+		int cores = Integer.getInteger("bot.cores", Runtime.getRuntime().availableProcessors());
+		try {
+			GameServer server = new GameServer(port, new OpeningBook(System.getProperty("bot.book", "book.bin")), cores);
+			System.err.println("Game server on port " + server.getPort());
+			server.run();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package bot;
+
+/**
+ * LongBoard class
+ *
+ * Board for fields that fit in 64 bits, such as the standard 7x6: one long per
+ * player and one for every disc, so most questions are a few shifts and ands.
+ */
+
+final class LongBoard extends Board {
+	private final Masks mMasks;
+	private final long[] mDiscs = new long[2];
+	private long mMask;
+
+	LongBoard(int columns, int rows) {
+		super(columns, rows);
+		mMasks = new Masks(columns, rows, stride);
+	}
+
+	private LongBoard(LongBoard b) {
+		super(b);
+		mMasks = b.mMasks;
+		mDiscs[0] = b.mDiscs[0];
+		mDiscs[1] = b.mDiscs[1];
+		mMask = b.mMask;
+	}
+
+	@Override
+	Board copy() {
+		return new LongBoard(this);
+	}
+
+	@Override
+	void clear() {
+		mDiscs[0] = 0;
+		mDiscs[1] = 0;
+		mMask = 0;
+	}
+
+	@Override
+	void toggle(int column, int height, int botId) {
+		long bit = 1L << (column * stride + height);
+		mDiscs[botId - 1] ^= bit;
+		mMask ^= bit;
+	}
+
+	@Override
+	int getDisc(int column, int height) {
+		long bit = 1L << (column * stride + height);
+		if ((mDiscs[0] & bit) != 0)
+			return 1;
+		if ((mDiscs[1] & bit) != 0)
+			return 2;
+		return 0;
+	}
+
+	@Override
+	boolean isAlignedOnLine(int botId, int column, int height, int dx, int dy) {
+		long discs = mDiscs[botId - 1];
+		if (dx == 0)
+			return (alignments(discs, 1) & mMasks.columns[column]) != 0;
+		if (dy == 0)
+			return (alignments(discs, stride) & (mMasks.bottom << height)) != 0;
+		int index = column * stride + height;
+		if (dy > 0)
+			return (alignments(discs, stride + 1) & mMasks.ascending[index]) != 0;
+		return (alignments(discs, stride - 1) & mMasks.descending[index]) != 0;
+	}
+
+	/**
+	 * returns the start bits of every 4 aligned discs in the given direction
+	 * @param discs
+	 * @param shift : 1 vertical, stride horizontal, stride + 1 ascending, stride - 1 descending
+	 * @return
+	 */
+	private static long alignments(long discs, int shift) {
+		long pairs = discs & (discs >>> shift);
+		return pairs & (pairs >>> (2 * shift));
+	}
+
+	private boolean isAligned(long discs) {
+		return (alignments(discs, 1) | alignments(discs, stride)
+				| alignments(discs, stride - 1) | alignments(discs, stride + 1)) != 0;
+	}
+
+	/**
+	 * @param botId
+	 * @return the empty cells where botId would align 4, playable or not
+	 */
+	private long winningCells(int botId) {
+		long p = mDiscs[botId - 1];
+		int s = stride;
+
+		//vertical: three discs right below
+		long r = (p << 1) & (p << 2) & (p << 3);
+
+		//horizontal and both diagonals: three discs around the cell on the same line
+		for (int shift = s - 1; shift <= s + 1; shift++) {
+			long t = (p << shift) & (p << 2 * shift);
+			r |= t & (p << 3 * shift);
+			r |= t & (p >>> shift);
+			t = (p >>> shift) & (p >>> 2 * shift);
+			r |= t & (p << shift);
+			r |= t & (p >>> 3 * shift);
+		}
+		return r & (mMasks.board ^ mMask);
+	}
+
+	private long playableCells() {
+		return (mMask + mMasks.bottom) & mMasks.board;
+	}
+
+	/** the columns of the cells in a mask */
+	private long columnsOf(long cells) {
+		long columns = 0;
+		while (cells != 0) {
+			columns |= 1L << (Long.numberOfTrailingZeros(cells) / stride);
+			cells &= cells - 1;
+		}
+		return columns;
+	}
+
+	@Override
+	long winningColumns(int botId) {
+		long cells = winningCells(botId) & playableCells();
+		return (cells == 0) ? 0 : columnsOf(cells);
+	}
+
+	@Override
+	long threatenedColumns(int botId) {
+		long cells = (winningCells(botId) >>> 1) & playableCells();
+		return (cells == 0) ? 0 : columnsOf(cells);
+	}
+
+	@Override
+	int countWinningCells(int botId, int parity) {
+		long cells = winningCells(botId);
+		if (parity == ODD_ROWS)
+			cells &= mMasks.oddRows;
+		else if (parity == EVEN_ROWS)
+			cells &= ~mMasks.oddRows;
+		return Long.bitCount(cells);
+	}
+
+	@Override
+	boolean alignsWithEmpty(int botId, int parity) {
+		long rows = (parity == ODD_ROWS) ? mMasks.oddRows : mMasks.board ^ mMasks.oddRows;
+		return isAligned(mDiscs[botId - 1] | (mMasks.board ^ mMask) & rows);
+	}
+
+	@Override
+	boolean hasUnopposedOddThreat(int first, int second) {
+		long odd = winningCells(first) & mMasks.oddRows;
+		if (odd == 0)
+			return false;
+		long secondThreats = winningCells(second);
+		for (int column = 0; column < cols; column++) {
+			long columnOdd = odd & mMasks.columns[column];
+			if (columnOdd != 0 && (secondThreats & mMasks.columns[column] & (Long.lowestOneBit(columnOdd) - 1)) == 0)
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	int stackedThreatTurns(int botId, int[] heights) {
+		long winning = winningCells(botId);
+		long stacked = winning & (winning >>> 1);
+		int turns = Integer.MAX_VALUE;
+		while (stacked != 0) {
+			int index = Long.numberOfTrailingZeros(stacked);
+			stacked &= stacked - 1;
+			int c = index / stride;
+			int h = index % stride;
+			turns = Math.min(turns, 2 * (h - heights[c] + 1));
+		}
+		return turns;
+	}
+
+	/** masks for a board size, immutable so copies share them */
+	private static final class Masks {
+		final long bottom;
+		final long board;
+		final long oddRows;
+		final long[] columns;
+		final long[] ascending;
+		final long[] descending;
+
+		Masks(int cols, int rows, int stride) {
+			columns = new long[cols];
+			ascending = new long[cols * stride];
+			descending = new long[cols * stride];
+			long b = 0;
+			for (int c = 0; c < cols; c++) {
+				b |= 1L << (c * stride);
+				columns[c] = ((1L << rows) - 1) << (c * stride);
+			}
+			bottom = b;
+			board = b * ((1L << rows) - 1);
+			oddRows = b * (0x5555555555555555L & ((1L << rows) - 1));
+			for (int c = 0; c < cols; c++) {
+				for (int h = 0; h < rows; h++) {
+					ascending[c * stride + h] = diagonal(cols, rows, stride, c, h, 1);
+					descending[c * stride + h] = diagonal(cols, rows, stride, c, h, -1);
+				}
+			}
+		}
+
+		private static long diagonal(int cols, int rows, int stride, int column, int height, int slope) {
+			int back = Math.min(column, slope > 0 ? height : rows - 1 - height);
+			int c = column - back;
+			int h = height - slope * back;
+			long mask = 0;
+			for (; c < cols && h >= 0 && h < rows; c++, h += slope) {
+				mask |= 1L << (c * stride + h);
+			}
+			return mask;
+		}
+	}
+}
@@ -0,0 +1,409 @@
+package bot;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * MonteCarloSearch class
+ *
+ * Monte Carlo Tree Search: every iteration walks down the tree picking children
+ * by UCT, grows the tree by one node's children, plays the game out with quick
+ * moves and counts the result on the way back up. The most visited move wins.
+ *
+ * Nodes live in a pool of primitive arrays allocated once, a node is an index.
+ * The children of a node are next to each other, so a node only needs to know
+ * its first child and how many there are. When the pool is full the tree stops
+ * growing and playouts go on from the leaves.
+ *
+ * With more than one thread all threads share the tree (tree parallelism).
+ * A thread walking through a node counts a few lost visits on it right away, a
+ * virtual loss, so other threads try different lines until the real result is
+ * in. Visits and wins are updated atomically, without locks.
+ *
+ * Playouts are guided by default: win if possible, block if needed, otherwise
+ * random. Plain random playouts are faster but weaker.
+ */
+
+public class MonteCarloSearch {
+	/** UCT exploration constant, wins are scored 0..1 */
+	private static final double EXPLORATION = 1.0;
+	/** visits counted as losses while a thread is below a node */
+	private static final int VIRTUAL_LOSS = 3;
+	/** a leaf gets its children after this many visits */
+	private static final int EXPAND_VISITS = 4;
+	/** bytes taken by one node, to size the pool from a memory budget */
+	private static final int NODE_BYTES = 16;
+	/** the clock is only read every CHECK_PLAYOUTS playouts */
+	private static final int CHECK_PLAYOUTS = 255;
+
+	private static final int NOT_EXPANDED = -1;
+	private static final int EXPANDING = -2;
+	private static final byte OPEN = 0, WON = 1, DRAWN = 2;
+
+	// the node pool, node 0 is the root
+	private final AtomicIntegerArray mFirstChild;
+	private final byte[] mChildCount;
+	private final byte[] mMove;
+	/** WON if the move into the node wins, DRAWN if it fills the field */
+	private final byte[] mTerminal;
+	private final AtomicIntegerArray mVisits;
+	/** in half points for the player that moved into the node: 2 a win, 1 a draw */
+	private final AtomicIntegerArray mWins;
+	private final AtomicInteger mSize = new AtomicInteger();
+
+	private Worker[] mWorkers = new Worker[0];
+	private ExecutorService mHelpers;
+	private volatile boolean mStop;
+	private long mDeadline;
+	private long mMaxPlayouts = Long.MAX_VALUE;
+	private boolean mGuided = true;
+
+	private int mBestMove = -1;
+	private long mPlayouts;
+	private long mNanos;
+
+	/**
+	 * @param megabytes : memory for the node pool, 16 bytes a node
+	 */
+	public MonteCarloSearch(int megabytes) {
+		int nodes = (int) Math.min(Integer.MAX_VALUE - 64, Math.max(1024, (long) megabytes * 1024 * 1024 / NODE_BYTES));
+		mFirstChild = new AtomicIntegerArray(nodes);
+		mChildCount = new byte[nodes];
+		mMove = new byte[nodes];
+		mTerminal = new byte[nodes];
+		mVisits = new AtomicIntegerArray(nodes);
+		mWins = new AtomicIntegerArray(nodes);
+		setThreads(1);
+	}
+
+	/**
+	 * sets the number of threads growing the tree, 1 keeps the search on the calling thread
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		threads = Math.max(1, threads);
+		if (threads == mWorkers.length)
+			return;
+		if (mHelpers != null) {
+			mHelpers.shutdownNow();
+			mHelpers = null;
+		}
+		mWorkers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			mWorkers[i] = new Worker(i);
+		}
+		if (threads > 1) {
+			mHelpers = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "mcts-helper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * limits the playouts per search, with one thread a limited search is deterministic
+	 * @param playouts : maximum playouts, Long.MAX_VALUE for none
+	 */
+	public void setMaxPlayouts(long playouts) {
+		mMaxPlayouts = playouts;
+	}
+
+	/**
+	 * @param guided : true for playouts that take wins and block, false for random ones
+	 */
+	public void setGuided(boolean guided) {
+		mGuided = guided;
+	}
+
+	/**
+	 * searches the field for the best move of botId until the time is up
+	 * @param field
+	 * @param botId : the player to move
+	 * @param timeLimit : milliseconds the search may take, Long.MAX_VALUE for no limit
+	 * @return the most visited column, -1 if there is no legal move
+	 */
+	public int bestMove(final Field field, final int botId, long timeLimit) {
+		long start = System.nanoTime();
+		mDeadline = (timeLimit >= Long.MAX_VALUE / 1000000L) ? Long.MAX_VALUE : start + timeLimit * 1000000L;
+		mStop = false;
+		mBestMove = -1;
+		mPlayouts = 0;
+
+		mSize.set(1);
+		mFirstChild.set(0, NOT_EXPANDED);
+		mVisits.set(0, 0);
+		mWins.set(0, 0);
+		mTerminal[0] = OPEN;
+		if (field.isFull())
+			return -1;
+		if (mMaxPlayouts == Long.MAX_VALUE && mDeadline == Long.MAX_VALUE)
+			mDeadline = start + 1000000000L; // never run forever
+
+		Future<?>[] helpers = new Future<?>[mWorkers.length - 1];
+		for (int i = 1; i < mWorkers.length; i++) {
+			final Worker worker = mWorkers[i];
+			final Field copy = new Field(field);
+			helpers[i - 1] = mHelpers.submit(new Runnable() {
+				public void run() {
+					worker.run(copy, botId);
+				}
+			});
+		}
+		mWorkers[0].run(new Field(field), botId);
+		mStop = true;
+		for (Future<?> helper : helpers) {
+			try {
+				helper.get();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		for (Worker worker : mWorkers) {
+			mPlayouts += worker.mPlayouts;
+		}
+		mNanos = System.nanoTime() - start;
+
+		// most visited child, a proven win goes first
+		int first = mFirstChild.get(0);
+		int best = -1;
+		for (int i = 0; first >= 0 && i < mChildCount[0]; i++) {
+			int child = first + i;
+			if (mTerminal[child] == WON)
+				return mBestMove = mMove[child];
+			if (best == -1 || mVisits.get(child) > mVisits.get(best))
+				best = child;
+		}
+		if (best != -1) {
+			mBestMove = mMove[best];
+		} else {
+			for (int column = 0; column < field.getNrColumns() && mBestMove == -1; column++) {
+				if (!field.isColumnFull(column))
+					mBestMove = column;
+			}
+		}
+		return mBestMove;
+	}
+
+	/**
+	 * stops a running bestMove() from another thread, it returns the best move found so far
+	 */
+	public void stop() {
+		mStop = true;
+	}
+
+	/**
+	 * @return the share of the playouts through the last best move the player to move won, 0..1
+	 */
+	public double getBestValue() {
+		int first = mFirstChild.get(0);
+		for (int i = 0; first >= 0 && i < mChildCount[0]; i++) {
+			int child = first + i;
+			if (mMove[child] == mBestMove)
+				return (mVisits.get(child) == 0) ? 0.5 : mWins.get(child) / (2.0 * mVisits.get(child));
+		}
+		return 0.5;
+	}
+
+	/**
+	 * @return the number of playouts of the last search, over all threads
+	 */
+	public long getPlayouts() {
+		return mPlayouts;
+	}
+
+	/**
+	 * @return playouts per second of the last search, over all threads
+	 */
+	public long getPlayoutsPerSecond() {
+		return (mNanos == 0) ? 0 : mPlayouts * 1000000000L / mNanos;
+	}
+
+	/**
+	 * @return the number of nodes in the tree of the last search
+	 */
+	public int getTreeSize() {
+		return Math.min(mSize.get(), mVisits.length());
+	}
+
+	private final class Worker {
+		private final int mIndex;
+		private SplittableRandom mRandom;
+		private int[] mPath = new int[0];
+		private long mPlayouts;
+
+		Worker(int index) {
+			mIndex = index;
+		}
+
+		void run(Field field, int botId) {
+			mPlayouts = 0;
+			mRandom = new SplittableRandom(0x5DEECE66DL + mIndex);
+			int cells = field.getNrColumns() * field.getNrRows();
+			if (mPath.length < cells + 1)
+				mPath = new int[cells + 1];
+			long limit = (mMaxPlayouts == Long.MAX_VALUE) ? Long.MAX_VALUE
+					: (mMaxPlayouts + mWorkers.length - 1) / mWorkers.length;
+			while (!mStop && mPlayouts < limit) {
+				if ((mPlayouts & CHECK_PLAYOUTS) == 0 && System.nanoTime() > mDeadline)
+					break;
+				iterate(field, botId);
+				mPlayouts++;
+			}
+		}
+
+		/** one walk down the tree, a playout and the walk back up */
+		private void iterate(Field field, int botId) {
+			int node = 0, length = 0, toMove = botId;
+			mPath[length++] = node;
+			mVisits.addAndGet(node, VIRTUAL_LOSS);
+			int winner;
+			while (true) {
+				if (mTerminal[node] == WON) {
+					winner = toMove % 2 + 1; // the player that moved into the node
+					break;
+				}
+				if (mTerminal[node] == DRAWN) {
+					winner = 0;
+					break;
+				}
+				int first = mFirstChild.get(node);
+				if (first == NOT_EXPANDED && mVisits.get(node) >= EXPAND_VISITS + VIRTUAL_LOSS
+						&& mSize.get() < mVisits.length() && mFirstChild.compareAndSet(node, NOT_EXPANDED, EXPANDING)) {
+					first = expand(field, node, toMove);
+				}
+				if (first < 0) {
+					winner = playout(field, toMove);
+					break;
+				}
+				node = select(node, first);
+				field.play(mMove[node], toMove);
+				toMove = toMove % 2 + 1;
+				mPath[length++] = node;
+				mVisits.addAndGet(node, VIRTUAL_LOSS);
+			}
+
+			// back up, the root's mover is the player before botId
+			int mover = (length % 2 == 1) ? botId % 2 + 1 : botId;
+			for (int i = length - 1; i >= 0; i--) {
+				int n = mPath[i];
+				mVisits.addAndGet(n, 1 - VIRTUAL_LOSS);
+				mWins.addAndGet(n, (winner == 0) ? 1 : (winner == mover) ? 2 : 0);
+				mover = mover % 2 + 1;
+				if (i > 0)
+					field.undo();
+			}
+		}
+
+		/** UCT, children that were never visited first */
+		private int select(int node, int first) {
+			double logVisits = Math.log(Math.max(1, mVisits.get(node)));
+			int best = first;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for (int child = first; child < first + mChildCount[node]; child++) {
+				int visits = mVisits.get(child);
+				if (visits == 0)
+					return child;
+				double value = mWins.get(child) / (2.0 * visits) + EXPLORATION * Math.sqrt(logVisits / visits);
+				if (value > bestValue) {
+					bestValue = value;
+					best = child;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * gives the node a child per legal move
+		 * @return the first child, NOT_EXPANDED again if the pool is full
+		 */
+		private int expand(Field field, int node, int toMove) {
+			int cols = field.getNrColumns();
+			int count = 0;
+			for (int column = 0; column < cols; column++) {
+				if (!field.isColumnFull(column))
+					count++;
+			}
+			int first = mSize.getAndAdd(count);
+			if (first + count > mVisits.length()) {
+				mFirstChild.set(node, NOT_EXPANDED);
+				return NOT_EXPANDED;
+			}
+			long wins = field.winningColumns(toMove);
+			boolean fills = field.getNrDiscs() + 1 == cols * field.getNrRows();
+			int child = first;
+			for (int column = 0; column < cols; column++) {
+				if (field.isColumnFull(column))
+					continue;
+				mFirstChild.set(child, NOT_EXPANDED);
+				mMove[child] = (byte) column;
+				mTerminal[child] = ((wins & (1L << column)) != 0) ? WON : fills ? DRAWN : OPEN;
+				mVisits.set(child, 0);
+				mWins.set(child, 0);
+				child++;
+			}
+			mChildCount[node] = (byte) count;
+			// the count is written before the first child, which other threads read first
+			mFirstChild.set(node, first);
+			return first;
+		}
+
+		/**
+		 * plays the game out from the field and takes the moves back
+		 * @return the botId of the winner, 0 for a draw
+		 */
+		private int playout(Field field, int toMove) {
+			int cols = field.getNrColumns();
+			int moves = 0;
+			int winner = 0;
+			while (!field.isFull()) {
+				int column;
+				if (mGuided) {
+					long wins = field.winningColumns(toMove);
+					if (wins != 0) {
+						winner = toMove;
+						break;
+					}
+					long blocks = field.winningColumns(toMove % 2 + 1);
+					column = (blocks != 0) ? Long.numberOfTrailingZeros(blocks) : randomColumn(field, cols);
+					field.play(column, toMove);
+					moves++;
+				} else {
+					column = randomColumn(field, cols);
+					int row = field.rowIfAddDisc(column);
+					field.play(column, toMove);
+					moves++;
+					if (field.simpleWin(column, row, toMove)) {
+						winner = toMove;
+						break;
+					}
+				}
+				toMove = toMove % 2 + 1;
+			}
+			for (int i = 0; i < moves; i++) {
+				field.undo();
+			}
+			return winner;
+		}
+
+		private int randomColumn(Field field, int cols) {
+			int free = 0;
+			for (int column = 0; column < cols; column++) {
+				if (!field.isColumnFull(column))
+					free++;
+			}
+			int pick = mRandom.nextInt(free);
+			for (int column = 0; ; column++) {
+				if (!field.isColumnFull(column) && pick-- == 0)
+					return column;
+			}
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package bot;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * MoveEvent class
+ *
+ * Flight Recorder event for one "action move", from the request to the reply.
+ */
+
+@Name("bot.Move")
+@Label("Move")
+@Category("Four In A Row")
+@Description("One move requested by the engine")
+final class MoveEvent extends jdk.jfr.Event {
+	static final String BOOK = "book";
+	static final String FORCED = "forced";
+	static final String SOLVER = "solver";
+	static final String SEARCH = "search";
+	static final String HEURISTIC = "heuristic";
+	static final String MCTS = "mcts";
+	static final String STORE = "store";
+
+	@Label("Player")
+	int botId;
+
+	@Label("Round")
+	int round;
+
+	@Label("Column")
+	int column;
+
+	@Label("Source")
+	@Description("book, forced, store, solver, search, mcts or heuristic")
+	String source;
+
+	@Label("Time Bank")
+	@Timespan(Timespan.MILLISECONDS)
+	long timebank;
+}
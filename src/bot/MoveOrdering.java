@@ -0,0 +1,138 @@
+package bot;
+
+import java.util.Arrays;
+
+/**
+ * MoveOrdering class
+ *
+ * Orders the legal moves of a Field for an alpha-beta search, best guesses first:
+ * immediate wins, blocks of the opponent's immediate wins, the move from the
+ * transposition table, the two killer moves of the ply, then the rest by history
+ * and finally from the center out. Moves that let the opponent win right on top
+ * of them go last.
+ *
+ * Killers and history are learned from the cutoffs the search reports, so every
+ * search thread needs its own instance. Plies are counted in discs on the field.
+ */
+
+public class MoveOrdering {
+	private static final int WIN = 1 << 30;
+	private static final int BLOCK = 1 << 29;
+	private static final int HASH_MOVE = 1 << 28;
+	private static final int KILLER_1 = 1 << 27;
+	private static final int KILLER_2 = 1 << 26;
+	private static final int LOSING = -(1 << 29);
+	/** history is halved when an entry gets this large, so it stays below the killers */
+	private static final int HISTORY_LIMIT = 1 << 20;
+
+	private int mCols, mRows;
+	private int[] mKillers = new int[0]; // two per ply
+	private int[][] mHistory = new int[2][0]; // per player and cell
+	private int[] mScores = new int[0];
+
+	/**
+	 * @param field
+	 * @param botId : the player to move
+	 * @param hashMove : column to try after wins and blocks, -1 for none
+	 * @param moves : receives the legal columns, best first; needs room for every column
+	 * @return the number of legal moves
+	 */
+	public int order(Field field, int botId, int hashMove, int[] moves) {
+		resize(field);
+		int ply = field.getNrDiscs();
+		int killer1 = mKillers[2 * ply], killer2 = mKillers[2 * ply + 1];
+		long wins = field.winningColumns(botId);
+		long blocks = field.winningColumns(botId % 2 + 1);
+		long losing = field.threatenedColumns(botId % 2 + 1);
+
+		int count = 0;
+		for (int column = 0; column < mCols; column++) {
+			if (field.isColumnFull(column))
+				continue;
+			long bit = 1L << column;
+			int height = mRows - 1 - field.rowIfAddDisc(column);
+			int score;
+			if ((wins & bit) != 0) {
+				score = WIN;
+			} else if ((blocks & bit) != 0) {
+				score = BLOCK;
+			} else {
+				// center first among equals
+				score = mHistory[botId - 1][column * mRows + height] * 16 + mCols - Math.abs(2 * column - mCols + 1);
+				if (column == hashMove)
+					score += HASH_MOVE;
+				else if (column == killer1)
+					score += KILLER_1;
+				else if (column == killer2)
+					score += KILLER_2;
+				if ((losing & bit) != 0)
+					score += LOSING;
+			}
+
+			// insertion sort, there are only a few moves
+			int i = count++;
+			while (i > 0 && mScores[i - 1] < score) {
+				mScores[i] = mScores[i - 1];
+				moves[i] = moves[i - 1];
+				i--;
+			}
+			mScores[i] = score;
+			moves[i] = column;
+		}
+		return count;
+	}
+
+	/**
+	 * learns from a move that caused a beta cutoff
+	 * @param field : the field before the move
+	 * @param botId : the player that made the move
+	 * @param column
+	 * @param depth : remaining depth of the node, deeper cutoffs count more
+	 */
+	public void cutoff(Field field, int botId, int column, int depth) {
+		resize(field);
+		int ply = field.getNrDiscs();
+		if (mKillers[2 * ply] != column) {
+			mKillers[2 * ply + 1] = mKillers[2 * ply];
+			mKillers[2 * ply] = column;
+		}
+		int[] history = mHistory[botId - 1];
+		int cell = column * mRows + (mRows - 1 - field.rowIfAddDisc(column));
+		history[cell] += depth * depth;
+		if (history[cell] >= HISTORY_LIMIT)
+			age();
+	}
+
+	/**
+	 * fades what was learned, e.g. between moves, so old cutoffs count less than new ones
+	 */
+	public void age() {
+		for (int[] history : mHistory) {
+			for (int i = 0; i < history.length; i++) {
+				history[i] /= 2;
+			}
+		}
+	}
+
+	/**
+	 * forgets what was learned, e.g. before a new game
+	 */
+	public void clear() {
+		Arrays.fill(mKillers, -1);
+		for (int[] history : mHistory) {
+			Arrays.fill(history, 0);
+		}
+	}
+
+	private void resize(Field field) {
+		if (field.getNrColumns() == mCols && field.getNrRows() == mRows)
+			return;
+		mCols = field.getNrColumns();
+		mRows = field.getNrRows();
+		int cells = mCols * mRows;
+		mKillers = new int[2 * (cells + 1)];
+		mHistory = new int[2][cells];
+		mScores = new int[mCols];
+		clear();
+	}
+}
@@ -0,0 +1,195 @@
+package bot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OpeningBook class
+ *
+ * Best moves for early positions, read from a memory mapped file.
+ * The file is a header followed by fixed size records sorted by position hash,
+ * so a lookup is a binary search over the mapping and nothing is copied onto the heap.
+ * A position and its mirror image share one record under Field.getKey(), with the
+ * move for the canonical one; books keyed by plain hashes still read correctly.
+ *
+ * Layout: int magic, int columns, int rows, int count,
+ * then count times: long hash, short score, byte move, byte depth.
+ */
+
+public class OpeningBook {
+	private static final int MAGIC = 0x43344243; // "C4BC"
+	private static final int HEADER_BYTES = 16;
+	private static final int RECORD_BYTES = 12;
+
+	private final MappedByteBuffer mBuffer;
+	private final int mCols, mRows;
+	private final int mCount;
+
+	/**
+	 * maps the book at path, a missing or broken file gives an empty book
+	 * @param path
+	 */
+	public OpeningBook(String path) {
+		MappedByteBuffer buffer = null;
+		int cols = 0, rows = 0, count = 0;
+		File file = new File(path);
+		if (file.isFile()) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (buffer.getInt(0) != MAGIC)
+					throw new IOException("not an opening book");
+				cols = buffer.getInt(4);
+				rows = buffer.getInt(8);
+				count = buffer.getInt(12);
+				if (HEADER_BYTES + (long) count * RECORD_BYTES > channel.size())
+					throw new IOException("truncated opening book");
+			} catch (IOException e) {
+				System.err.println("Opening book " + path + " ignored: " + e.getMessage());
+				buffer = null;
+				count = 0;
+			}
+		}
+		mBuffer = buffer;
+		mCols = cols;
+		mRows = rows;
+		mCount = count;
+	}
+
+	/**
+	 * @return the number of positions in the book
+	 */
+	public int size() {
+		return mCount;
+	}
+
+	/**
+	 * looks up the best move for the player to move
+	 * @param field
+	 * @return the column to play, -1 if the position is not in the book
+	 */
+	public int lookup(Field field) {
+		int index = find(field);
+		if (index < 0)
+			return -1;
+		int move = field.canonicalColumn(mBuffer.get(HEADER_BYTES + index * RECORD_BYTES + 10));
+		if (move < 0 || move >= field.getNrColumns() || field.isColumnFull(move))
+			return -1;
+		return move;
+	}
+
+	/**
+	 * @param field
+	 * @return the stored score of the position, 0 if the position is not in the book
+	 */
+	public int score(Field field) {
+		int index = find(field);
+		if (index < 0)
+			return 0;
+		return mBuffer.getShort(HEADER_BYTES + index * RECORD_BYTES + 8);
+	}
+
+	private int find(Field field) {
+		if (mCount == 0 || field.getNrColumns() != mCols || field.getNrRows() != mRows)
+			return -1;
+		long key = field.getKey();
+		int low = 0, high = mCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long midKey = mBuffer.getLong(HEADER_BYTES + mid * RECORD_BYTES);
+			if (midKey < key)
+				low = mid + 1;
+			else if (midKey > key)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * searches every position up to the given number of discs and writes the book
+	 * @param path
+	 * @param columns
+	 * @param rows
+	 * @param plies : positions with fewer discs than this are stored
+	 * @param depth : search depth per position
+	 * @throws IOException
+	 */
+	public static void build(String path, int columns, int rows, int plies, int depth) throws IOException {
+		Search search = new Search(new TranspositionTable(64));
+		search.setMaxDepth(depth);
+		Map<Long, long[]> records = new HashMap<>();
+		List<Field> level = new ArrayList<>();
+		level.add(new Field(columns, rows));
+		for (int ply = 0; ply < plies && !level.isEmpty(); ply++) {
+			List<Field> next = new ArrayList<>();
+			for (Field field : level) {
+				// player 1 starts, so the player to move follows from the number of discs
+				int botId = field.getNrDiscs() % 2 + 1;
+				int move = search.bestMove(field, botId, Long.MAX_VALUE);
+				if (move == -1)
+					continue;
+				records.put(field.getKey(), new long[] { search.getBestScore(), field.canonicalColumn(move), search.getDepth() });
+				for (int column = 0; column < columns; column++) {
+					if (field.isColumnFull(column))
+						continue;
+					Field child = new Field(field);
+					int row = child.rowIfAddDisc(column);
+					child.addDisc(column, botId);
+					if (!child.simpleWin(column, row, botId) && !records.containsKey(child.getKey())) {
+						records.put(child.getKey(), null);
+						next.add(child);
+					}
+				}
+			}
+			level = next;
+		}
+
+		long[] keys = new long[records.size()];
+		int count = 0;
+		for (Map.Entry<Long, long[]> record : records.entrySet()) {
+			if (record.getValue() != null)
+				keys[count++] = record.getKey();
+		}
+		keys = Arrays.copyOf(keys, count);
+		Arrays.sort(keys);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(columns);
+			out.writeInt(rows);
+			out.writeInt(count);
+			for (long key : keys) {
+				long[] record = records.get(key);
+				out.writeLong(key);
+				out.writeShort((int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, record[0])));
+				out.writeByte((int) record[1]);
+				out.writeByte((int) record[2]);
+			}
+		}
+	}
+
+	/**
+	 * builds a book: OpeningBook <path> [plies] [depth] [columns] [rows]
+	 */
+	public static void main(String[] args) throws IOException {
+		String path = args.length > 0 ? args[0] : "book.bin";
+		int plies = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+		int columns = args.length > 3 ? Integer.parseInt(args[3]) : 7;
+		int rows = args.length > 4 ? Integer.parseInt(args[4]) : 6;
+		build(path, columns, rows, plies, depth);
+		System.err.println("Opening book written to " + path + ": " + new OpeningBook(path).size() + " positions");
+	}
+}
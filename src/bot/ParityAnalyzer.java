@@ -0,0 +1,92 @@
+package bot;
+
+/**
+ * ParityAnalyzer class
+ *
+ * Static Connect-Four parity knowledge over a Field: threats sorted by row
+ * parity, who controls zugzwang, and claimeven proofs.
+ *
+ * Claimeven: when every column has an even number of empty cells, the player
+ * who is not to move can always answer in the column just played. That player
+ * gets every empty cell of one row parity, the player to move gets the others.
+ * If the player to move can't align 4 on its own cells it can't win, and if the
+ * other player then aligns 4 on its cells it wins. With exactly one column
+ * holding an odd number of empty cells the player to move gets this strategy
+ * by playing there first.
+ */
+
+public class ParityAnalyzer {
+	/** results of prove(), from the point of view of the player to move */
+	public static final int UNKNOWN = 0;
+	public static final int WIN = 1;
+	public static final int LOSS = 2;
+	public static final int AT_LEAST_DRAW = 3;
+	public static final int AT_MOST_DRAW = 4;
+
+	private ParityAnalyzer() {
+	}
+
+	/**
+	 * tries to prove the outcome of the game with claimeven
+	 * @param field
+	 * @param botId : the player to move
+	 * @return UNKNOWN, WIN, LOSS, AT_LEAST_DRAW or AT_MOST_DRAW for botId
+	 */
+	public static int prove(Field field, int botId) {
+		int oddColumns = 0;
+		for (int column = 0; column < field.getNrColumns(); column++) {
+			if ((field.rowIfAddDisc(column) & 1) == 0) // row index + 1 empty cells
+				oddColumns++;
+		}
+		if (oddColumns > 1)
+			return UNKNOWN;
+
+		// the claimant ends up with the empty cells on the same row parity as the top row
+		int topParity = (field.getNrRows() % 2 == 1) ? Board.ODD_ROWS : Board.EVEN_ROWS;
+		int otherBotId = botId % 2 + 1;
+		int claimant = (oddColumns == 0) ? otherBotId : botId;
+		int opponent = claimant % 2 + 1;
+
+		if (field.alignsWithEmpty(opponent, 1 - topParity))
+			return UNKNOWN;
+		boolean claimantWins = field.alignsWithEmpty(claimant, topParity);
+		if (claimant == botId)
+			return claimantWins ? WIN : AT_LEAST_DRAW;
+		return claimantWins ? LOSS : AT_MOST_DRAW;
+	}
+
+	/**
+	 * @param field
+	 * @param botId
+	 * @return the number of cells on odd rows (counted from the bottom) where botId would align 4
+	 */
+	public static int oddThreats(Field field, int botId) {
+		return field.countWinningCells(botId, Board.ODD_ROWS);
+	}
+
+	/**
+	 * @param field
+	 * @param botId
+	 * @return the number of cells on even rows (counted from the bottom) where botId would align 4
+	 */
+	public static int evenThreats(Field field, int botId) {
+		return field.countWinningCells(botId, Board.EVEN_ROWS);
+	}
+
+	/**
+	 * returns the player that controls zugzwang, following the usual rules of thumb:
+	 * the player who moves when an even number of cells is left wants an odd threat,
+	 * the other one is happy with an even threat or no threat at all. A threat only
+	 * counts if the opponent has no threat below it in the same column.
+	 * @param field
+	 * @param botId : the player to move
+	 * @return the botId of the player in control
+	 */
+	public static int zugzwangController(Field field, int botId) {
+		int otherBotId = botId % 2 + 1;
+		boolean evenCellsLeft = (field.getNrColumns() * field.getNrRows() - field.getNrDiscs()) % 2 == 0;
+		int first = evenCellsLeft ? botId : otherBotId;
+		int second = first % 2 + 1;
+		return field.hasUnopposedOddThreat(first, second) ? first : second;
+	}
+}
@@ -0,0 +1,194 @@
+package bot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ProtocolReader class
+ *
+ * Reads the engine protocol line by line straight from the input bytes.
+ * Lines and their space separated tokens are offsets into one reusable buffer,
+ * so reading a command creates no Strings; tokens are compared with is() and
+ * numbers are parsed in place. The buffer only grows for longer lines.
+ */
+
+public class ProtocolReader {
+	private static final int MAX_TOKENS = 8;
+
+	private final InputStream mIn;
+	private byte[] mBuffer = new byte[4096];
+	private int mPosition, mLimit;
+
+	private byte[] mData;
+	private int mLineStart, mLineEnd;
+	private final int[] mStarts = new int[MAX_TOKENS];
+	private final int[] mEnds = new int[MAX_TOKENS];
+	private int mTokens;
+
+	public ProtocolReader(InputStream in) {
+		mIn = in;
+		mData = mBuffer;
+	}
+
+	/**
+	 * reads the next line, without its line break, and splits it into tokens
+	 * @return false at the end of the input
+	 * @throws IOException
+	 */
+	public boolean nextLine() throws IOException {
+		int end;
+		while ((end = indexOf('\n')) == -1) {
+			if (mPosition > 0) {
+				System.arraycopy(mBuffer, mPosition, mBuffer, 0, mLimit - mPosition);
+				mLimit -= mPosition;
+				mPosition = 0;
+			} else if (mLimit == mBuffer.length) {
+				byte[] buffer = new byte[mBuffer.length * 2];
+				System.arraycopy(mBuffer, 0, buffer, 0, mLimit);
+				mBuffer = buffer;
+			}
+			int read = mIn.read(mBuffer, mLimit, mBuffer.length - mLimit);
+			if (read == -1) {
+				if (mPosition == mLimit)
+					return false;
+				end = mLimit; // last line without a line break
+				break;
+			}
+			mLimit += read;
+		}
+		int start = mPosition;
+		mPosition = Math.min(end + 1, mLimit);
+		if (end > start && mBuffer[end - 1] == '\r')
+			end--;
+		split(mBuffer, start, end);
+		return true;
+	}
+
+	/**
+	 * makes a line given as a String the current line, e.g. to drive the parser in-process
+	 * @param line
+	 */
+	public void load(String line) {
+		byte[] data = line.getBytes(StandardCharsets.US_ASCII);
+		split(data, 0, data.length);
+	}
+
+	private int indexOf(int b) {
+		for (int i = mPosition; i < mLimit; i++) {
+			if (mBuffer[i] == b)
+				return i;
+		}
+		return -1;
+	}
+
+	private void split(byte[] data, int start, int end) {
+		mData = data;
+		mLineStart = start;
+		mLineEnd = end;
+		mTokens = 0;
+		int i = start;
+		while (i < end && mTokens < MAX_TOKENS) {
+			while (i < end && data[i] == ' ')
+				i++;
+			if (i == end)
+				break;
+			mStarts[mTokens] = i;
+			while (i < end && data[i] != ' ')
+				i++;
+			mEnds[mTokens++] = i;
+		}
+	}
+
+	/**
+	 * @return the number of tokens on the current line
+	 */
+	public int tokens() {
+		return mTokens;
+	}
+
+	/**
+	 * @param token
+	 * @param word
+	 * @return true if the token exists and equals word
+	 */
+	public boolean is(int token, byte[] word) {
+		if (token >= mTokens || mEnds[token] - mStarts[token] != word.length)
+			return false;
+		for (int i = 0; i < word.length; i++) {
+			if (mData[mStarts[token] + i] != word[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param token
+	 * @return the token as a number
+	 * @throws NumberFormatException if the token is missing or not a number
+	 */
+	public int parseInt(int token) {
+		if (token >= mTokens)
+			throw new NumberFormatException("missing token " + token);
+		int i = mStarts[token], end = mEnds[token];
+		boolean negative = (mData[i] == '-');
+		if (negative)
+			i++;
+		if (i == end)
+			throw new NumberFormatException("empty number");
+		int value = 0;
+		for (; i < end; i++) {
+			int digit = mData[i] - '0';
+			if (digit < 0 || digit > 9)
+				throw new NumberFormatException("not a number: " + token(token));
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * @return the buffer holding the current line, see start() and end()
+	 */
+	public byte[] data() {
+		return mData;
+	}
+
+	/**
+	 * @param token
+	 * @return offset of the token in data()
+	 */
+	public int start(int token) {
+		return mStarts[token];
+	}
+
+	/**
+	 * @param token
+	 * @return offset after the token in data()
+	 */
+	public int end(int token) {
+		return mEnds[token];
+	}
+
+	/**
+	 * @param token
+	 * @return the token as a String, for messages only
+	 */
+	public String token(int token) {
+		return new String(mData, mStarts[token], mEnds[token] - mStarts[token], StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @return the current line as a String, for messages only
+	 */
+	public String line() {
+		return new String(mData, mLineStart, mLineEnd - mLineStart, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @param word
+	 * @return the bytes of word, for use with is()
+	 */
+	static byte[] bytes(String word) {
+		return word.getBytes(StandardCharsets.US_ASCII);
+	}
+}
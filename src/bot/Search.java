@@ -0,0 +1,531 @@
+package bot;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Search class
+ *
+ * Negamax search with alpha-beta pruning and iterative deepening.
+ * Every finished iteration leaves a best move behind, so the search can be
+ * stopped at any time. Leaves are scored with the *TurnsToWin heuristics.
+ * Results are cached in a transposition table that is kept between moves.
+ * Subtrees whose outcome ParityAnalyzer can prove are cut or narrowed.
+ * Moves are tried in the order MoveOrdering gives, which learns from cutoffs.
+ *
+ * With more than one thread the search runs Lazy SMP: helper threads search
+ * the same root at staggered depths and only talk to each other through the
+ * shared transposition table. With one thread no other thread is involved.
+ */
+
+public class Search {
+	/** score of a win on an empty field, a win with n discs on the field scores WIN - n */
+	static final int WIN = 100000;
+	static final int INFINITY = WIN + 1;
+
+	/** bonus for the player that controls zugzwang */
+	private static final int ZUGZWANG = 24;
+
+	/** one line per search on stderr, -Dbot.log=true to turn on */
+	private static final boolean LOG = Boolean.getBoolean("bot.log");
+	
+	/** the clock is only read every CHECK_NODES nodes */
+	private static final int CHECK_NODES = 1023;
+
+	private final TranspositionTable mTable;
+	private Worker[] mWorkers = new Worker[0];
+	private ExecutorService mHelpers;
+
+	private volatile boolean mStop;
+	private long mDeadline;
+	private long mSoftDeadline;
+	private int mMaxDepth = Integer.MAX_VALUE;
+	private boolean mTableAging = true;
+
+	private int mBestMove = -1;
+	private int mBestScore = 0;
+	private boolean mScoreExact;
+	private int mDepth = 0;
+	private long mNodes;
+	private long mCutoffs;
+	private long mTableProbes;
+	private long mTableHits;
+	private long mNanos;
+
+	public Search(TranspositionTable table) {
+		mTable = table;
+		setThreads(1);
+	}
+
+	/**
+	 * sets the number of threads searching each move, 1 keeps the search on the calling thread
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		threads = Math.max(1, threads);
+		if (threads == mWorkers.length)
+			return;
+		if (mHelpers != null) {
+			mHelpers.shutdownNow();
+			mHelpers = null;
+		}
+		mWorkers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			mWorkers[i] = new Worker(i);
+		}
+		if (threads > 1) {
+			mHelpers = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "search-helper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * limits the depth of the iterations, with one thread a depth limited search is deterministic
+	 * @param depth : maximum depth, Integer.MAX_VALUE for none
+	 */
+	public void setMaxDepth(int depth) {
+		mMaxDepth = depth;
+	}
+
+	/**
+	 * @param aging : false to leave TranspositionTable.newSearch() to the owner of a table that
+	 * searches running at the same time share, true to age the table at every bestMove()
+	 */
+	public void setTableAging(boolean aging) {
+		mTableAging = aging;
+	}
+
+	/**
+	 * forgets every cached position, e.g. before a new game
+	 */
+	public void clearTable() {
+		mTable.clear();
+		for (Worker worker : mWorkers) {
+			worker.mOrdering.clear();
+		}
+	}
+
+	/**
+	 * @return the number of threads searching each move
+	 */
+	public int getThreads() {
+		return mWorkers.length;
+	}
+
+	/**
+	 * searches the field for the best move of botId, deepening until the time is up
+	 * @param field
+	 * @param botId : the player to move
+	 * @param timeLimit : milliseconds the search may take, Long.MAX_VALUE for no limit
+	 * @return the best column, -1 if there is no legal move
+	 */
+	public int bestMove(final Field field, final int botId, long timeLimit) {
+		return bestMove(field, botId, timeLimit, timeLimit);
+	}
+	
+	/**
+	 * searches the field for the best move of botId with a soft and a hard time limit
+	 * @param field
+	 * @param botId : the player to move
+	 * @param softLimit : milliseconds after which no new iteration starts, Long.MAX_VALUE for no limit
+	 * @param hardLimit : milliseconds after which the search stops, Long.MAX_VALUE for no limit
+	 * @return the best column, -1 if there is no legal move
+	 */
+	public int bestMove(final Field field, final int botId, long softLimit, long hardLimit) {
+		SearchEvent event = new SearchEvent();
+		event.begin();
+		long start = System.nanoTime();
+		mDeadline = deadline(hardLimit);
+		mSoftDeadline = deadline(softLimit);
+		mStop = false;
+		mBestMove = -1;
+		mBestScore = 0;
+		mScoreExact = false;
+		mDepth = 0;
+		mNodes = 0;
+		mCutoffs = 0;
+		mTableProbes = 0;
+		mTableHits = 0;
+		mNanos = 0;
+		if (mTableAging)
+			mTable.newSearch();
+
+		int legalMoves = 0;
+		for (int column = 0; column < field.getNrColumns(); column++) {
+			if (!field.isColumnFull(column)) {
+				if (mBestMove == -1)
+					mBestMove = column;
+				legalMoves++;
+			}
+		}
+		if (legalMoves <= 1)
+			return mBestMove;
+
+		Future<?>[] helpers = new Future<?>[mWorkers.length - 1];
+		for (int i = 1; i < mWorkers.length; i++) {
+			final Worker worker = mWorkers[i];
+			final Field copy = new Field(field);
+			helpers[i - 1] = mHelpers.submit(new Runnable() {
+				public void run() {
+					worker.iterate(copy, botId);
+				}
+			});
+		}
+		mWorkers[0].iterate(field, botId);
+		mStop = true;
+		for (Future<?> helper : helpers) {
+			try {
+				helper.get();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+
+		// the deepest finished iteration wins, the main thread on ties
+		Worker best = mWorkers[0];
+		for (Worker worker : mWorkers) {
+			mNodes += worker.mNodes;
+			mCutoffs += worker.mCutoffs;
+			mTableProbes += worker.mTableProbes;
+			mTableHits += worker.mTableHits;
+			if (worker.mDepth > best.mDepth && worker.mBestMove != -1)
+				best = worker;
+		}
+		mBestMove = best.mBestMove;
+		mBestScore = best.mBestScore;
+		mScoreExact = best.mExact;
+		mDepth = best.mDepth;
+		mNanos = System.nanoTime() - start;
+		if (event.shouldCommit()) {
+			event.botId = botId;
+			event.discs = field.getNrDiscs();
+			event.depth = mDepth;
+			event.move = mBestMove;
+			event.score = mBestScore;
+			event.nodes = mNodes;
+			event.nps = getNodesPerSecond();
+			event.cutoffs = mCutoffs;
+			event.tableProbes = mTableProbes;
+			event.tableHits = mTableHits;
+			event.threads = mWorkers.length;
+			event.softLimit = (softLimit == Long.MAX_VALUE) ? -1 : softLimit;
+			event.hardLimit = (hardLimit == Long.MAX_VALUE) ? -1 : hardLimit;
+			event.commit();
+		}
+		if (LOG) {
+			System.err.println("depth " + mDepth + ", score " + mBestScore + ", move " + mBestMove
+					+ ", nodes " + mNodes + ", nps " + getNodesPerSecond() + ", cutoffs " + mCutoffs
+					+ ", table hits " + mTableHits + "/" + mTableProbes + ", " + mNanos / 1000000L + " ms");
+		}
+		return mBestMove;
+	}
+
+	private static long deadline(long timeLimit) {
+		return (timeLimit >= Long.MAX_VALUE / 1000000L) ? Long.MAX_VALUE
+				: System.nanoTime() + timeLimit * 1000000L;
+	}
+	
+	/**
+	 * stops a running bestMove() from another thread, it returns the best move found so far
+	 */
+	public void stop() {
+		mStop = true;
+	}
+	
+	/**
+	 * @return the score of the last best move, from the point of view of the player to move
+	 */
+	public int getBestScore() {
+		return mBestScore;
+	}
+
+	/**
+	 * @return true if the best score is from an iteration that searched every root move,
+	 * false if a cut short iteration changed it
+	 */
+	public boolean isScoreExact() {
+		return mScoreExact;
+	}
+
+	/**
+	 * @return the depth of the last completed iteration
+	 */
+	public int getDepth() {
+		return mDepth;
+	}
+
+	/**
+	 * @return the number of nodes visited by the last search, over all threads
+	 */
+	public long getNodes() {
+		return mNodes;
+	}
+	
+	/**
+	 * @return nodes per second of the last search, over all threads
+	 */
+	public long getNodesPerSecond() {
+		return (mNanos == 0) ? 0 : mNodes * 1000000000L / mNanos;
+	}
+	
+	/**
+	 * @return beta cutoffs and cutoffs on table entries in the last search
+	 */
+	public long getCutoffs() {
+		return mCutoffs;
+	}
+	
+	/**
+	 * @return the number of table probes in the last search
+	 */
+	public long getTableProbes() {
+		return mTableProbes;
+	}
+	
+	/**
+	 * @return the number of table probes that found their position in the last search
+	 */
+	public long getTableHits() {
+		return mTableHits;
+	}
+	
+	/**
+	 * @return nanoseconds the last search took
+	 */
+	public long getNanos() {
+		return mNanos;
+	}
+
+	/**
+	 * static evaluation from the point of view of botId (the player to move):
+	 * every playable cell is scored by how few discs each player still needs
+	 * to align 4 through it
+	 * @param field
+	 * @param botId
+	 * @return
+	 */
+	static int evaluate(Field field, int botId) {
+		int otherBotId = botId % 2 + 1;
+		int score = 0;
+		for (int column = 0; column < field.getNrColumns(); column++) {
+			if (field.isColumnFull(column))
+				continue;
+			int row = field.rowIfAddDisc(column);
+			score += cellScore(field, column, row, botId);
+			score -= cellScore(field, column, row, otherBotId);
+		}
+		score += (ParityAnalyzer.zugzwangController(field, botId) == botId) ? ZUGZWANG : -ZUGZWANG;
+		return score;
+	}
+
+	private static int cellScore(Field field, int column, int row, int botId) {
+		field.play(column, botId);
+		int minTurnsToWin = Math.min(
+				Math.min(field.verticalTurnsToWin(column, row, botId),
+						field.horizontalTurnsToWin(column, row, botId)),
+				Math.min(field.ascendingDiagonalTurnsToWin(column, row, botId),
+						field.descendingDiagonalTurnsToWin(column, row, botId)));
+		int freeAdjacentSpaces = field.freeAdjacentSpaces(column, row);
+		field.undo();
+		if (minTurnsToWin >= 4)
+			return 0;
+		return (4 - minTurnsToWin) * (4 - minTurnsToWin) * 4 + freeAdjacentSpaces;
+	}
+
+	/**
+	 * keeps a score within what ParityAnalyzer proved about the position
+	 * @param score
+	 * @param proof
+	 * @return
+	 */
+	private static int clamp(int score, int proof) {
+		if (proof == ParityAnalyzer.AT_MOST_DRAW)
+			return Math.min(score, 0);
+		if (proof == ParityAnalyzer.AT_LEAST_DRAW)
+			return Math.max(score, 0);
+		return score;
+	}
+
+	/**
+	 * One search thread. Worker 0 runs on the caller's thread, helpers start
+	 * at staggered depths so they fill the table ahead of it.
+	 */
+	private final class Worker {
+		private final int mIndex;
+		private boolean mStopped;
+		private long mNodes;
+		private long mCutoffs;
+		private long mTableProbes;
+		private long mTableHits;
+		private int mBestMove;
+		private int mBestScore;
+		/** mBestMove and mBestScore are from the last completed iteration */
+		private boolean mExact;
+		private int mDepth;
+		private final MoveOrdering mOrdering = new MoveOrdering();
+		/** move lists per ply, indexed by the number of discs */
+		private int[][] mMoves = new int[0][];
+
+		Worker(int index) {
+			mIndex = index;
+		}
+
+		void iterate(Field field, int botId) {
+			mStopped = false;
+			mNodes = 0;
+			mCutoffs = 0;
+			mTableProbes = 0;
+			mTableHits = 0;
+			mBestMove = -1;
+			mBestScore = 0;
+			mExact = false;
+			mDepth = 0;
+
+			int cells = field.getNrColumns() * field.getNrRows();
+			if (mMoves.length != cells + 1 || mMoves[0].length != field.getNrColumns())
+				mMoves = new int[cells + 1][field.getNrColumns()];
+			mOrdering.age();
+			int maxDepth = Math.min(mMaxDepth, cells - field.getNrDiscs());
+			for (int depth = 1 + (mIndex & 1); depth <= maxDepth; depth++) {
+				searchRoot(field, botId, depth);
+				if (mStopped)
+					break;
+				mDepth = depth;
+				mExact = true;
+				if (mBestScore >= WIN - cells || mBestScore <= -WIN + cells)
+					break; // proven result, deeper search can't change it
+				if (mIndex == 0 && System.nanoTime() > mSoftDeadline)
+					break; // the next iteration would most likely not finish
+			}
+			if (mIndex == 0)
+				mStop = true;
+		}
+
+		private void searchRoot(Field field, int botId, int depth) {
+			int alpha = -INFINITY;
+			int otherBotId = botId % 2 + 1;
+
+			// previous iteration's best move first
+			int[] moves = mMoves[field.getNrDiscs()];
+			int count = mOrdering.order(field, botId, mBestMove, moves);
+			for (int i = 0; i < count; i++) {
+				int column = moves[i];
+				int row = field.rowIfAddDisc(column);
+				field.play(column, botId);
+				int score;
+				if (field.simpleWin(column, row, botId)) {
+					score = WIN - field.getNrDiscs();
+				} else {
+					score = -negamax(field, otherBotId, depth - 1, -INFINITY, -alpha);
+				}
+				field.undo();
+				if (mStopped)
+					return;
+				if (score > alpha) {
+					alpha = score;
+					// a move searched in full may be kept even if the iteration is cut short
+					mBestMove = column;
+					mBestScore = score;
+					mExact = false;
+				}
+			}
+		}
+
+		private int negamax(Field field, int botId, int depth, int alpha, int beta) {
+			if ((++mNodes & CHECK_NODES) == 0 && (mStop || System.nanoTime() > mDeadline))
+				mStopped = true;
+			if (mStopped)
+				return 0;
+			if (field.isFull())
+				return 0;
+			if (field.canWinNext(botId))
+				return WIN - field.getNrDiscs() - 1;
+
+			// proven results don't know when the game ends, so they count as the last possible disc
+			int cells = field.getNrColumns() * field.getNrRows();
+			int proof = ParityAnalyzer.prove(field, botId);
+			if (proof == ParityAnalyzer.WIN)
+				return WIN - cells;
+			if (proof == ParityAnalyzer.LOSS)
+				return -WIN + cells;
+			if (proof == ParityAnalyzer.AT_MOST_DRAW && beta > 0) {
+				beta = 0;
+				if (alpha >= beta)
+					return 0;
+			} else if (proof == ParityAnalyzer.AT_LEAST_DRAW && alpha < 0) {
+				alpha = 0;
+				if (alpha >= beta)
+					return 0;
+			}
+			if (depth == 0)
+				return clamp(evaluate(field, botId), proof);
+
+			// one entry for a position and its mirror image, moves are stored for the canonical one
+			long key = field.getKey();
+			long entry = mTable.probe(key);
+			int hashMove = -1;
+			mTableProbes++;
+			if (entry != 0) {
+				mTableHits++;
+				hashMove = field.canonicalColumn(TranspositionTable.move(entry));
+				if (TranspositionTable.depth(entry) >= depth) {
+					int score = TranspositionTable.score(entry);
+					int bound = TranspositionTable.bound(entry);
+					if (bound == TranspositionTable.EXACT) {
+						mCutoffs++;
+						return score;
+					}
+					if (bound == TranspositionTable.LOWER)
+						alpha = Math.max(alpha, score);
+					else
+						beta = Math.min(beta, score);
+					if (alpha >= beta) {
+						mCutoffs++;
+						return score;
+					}
+				}
+			}
+
+			int alphaOrig = alpha;
+			int otherBotId = botId % 2 + 1;
+			int best = -INFINITY;
+			int bestMove = -1;
+			int[] moves = mMoves[field.getNrDiscs()];
+			int count = mOrdering.order(field, botId, hashMove, moves);
+			for (int i = 0; i < count; i++) {
+				int column = moves[i];
+				// no move wins right away here, that was checked above
+				field.play(column, botId);
+				int score = -negamax(field, otherBotId, depth - 1, -beta, -alpha);
+				field.undo();
+				if (score > best) {
+					best = score;
+					bestMove = column;
+					if (score > alpha) {
+						alpha = score;
+						if (alpha >= beta) {
+							mCutoffs++;
+							mOrdering.cutoff(field, botId, column, depth);
+							break;
+						}
+					}
+				}
+			}
+			if (mStopped)
+				return 0;
+
+			best = clamp(best, proof);
+			int bound = (best <= alphaOrig) ? TranspositionTable.UPPER
+					: (best >= beta) ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			mTable.store(key, depth, bound, best, field.canonicalColumn(bestMove));
+			return best;
+		}
+	}
+}
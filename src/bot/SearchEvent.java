@@ -0,0 +1,64 @@
+package bot;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * SearchEvent class
+ *
+ * Flight Recorder event for one call of Search.bestMove, pondering included.
+ * Record with -XX:StartFlightRecording; when the event is not enabled the JIT
+ * removes it and the search runs as fast as without it.
+ */
+
+@Name("bot.Search")
+@Label("Search")
+@Category("Four In A Row")
+@Description("One search for the best move")
+final class SearchEvent extends jdk.jfr.Event {
+	@Label("Player")
+	int botId;
+
+	@Label("Discs")
+	int discs;
+
+	@Label("Depth")
+	@Description("Depth of the last completed iteration")
+	int depth;
+
+	@Label("Move")
+	int move;
+
+	@Label("Score")
+	int score;
+
+	@Label("Nodes")
+	long nodes;
+
+	@Label("Nodes Per Second")
+	long nps;
+
+	@Label("Cutoffs")
+	@Description("Beta cutoffs and cutoffs on table entries")
+	long cutoffs;
+
+	@Label("Table Probes")
+	long tableProbes;
+
+	@Label("Table Hits")
+	long tableHits;
+
+	@Label("Threads")
+	int threads;
+
+	@Label("Soft Limit")
+	@Timespan(Timespan.MILLISECONDS)
+	long softLimit;
+
+	@Label("Hard Limit")
+	@Timespan(Timespan.MILLISECONDS)
+	long hardLimit;
+}
@@ -0,0 +1,198 @@
+package bot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SolvedStore class
+ *
+ * Positions whose outcome was proven during play, kept in a memory mapped file
+ * that outlives the process. The file is a header followed by a hash table of
+ * 8 byte slots, so opening it is only a mapping: nothing is read or indexed up
+ * front and the pages come in as positions are looked up. New results are
+ * written straight into the mapping and reach the file without a flush.
+ *
+ * Layout: int magic, int columns, int rows, int log2 of the slots, then the slots.
+ * A slot holds the high bits of Field.getKey(), the column to play plus one and
+ * the outcome for the player to move, 0 for an empty slot. A position and its
+ * mirror image share a slot, the move is stored for the canonical one.
+ *
+ * A store is made for the size of the first game that opens it and refuses to
+ * open for any other size. The table never grows, when the slots near a position
+ * are taken the result is dropped. The games of a process share one mapping of
+ * a file and its reads and writes are serialized; processes sharing a file may
+ * lose each other's results now and then, never corrupt them.
+ */
+
+public class SolvedStore {
+	private static final int MAGIC = 0x43345353; // "C4SS"
+	private static final int HEADER_BYTES = 16;
+	/** slots tried after the home slot of a key */
+	private static final int MAX_PROBES = 16;
+	/** a mapping holds at most 2 GB */
+	private static final int MAX_BITS = 27;
+	private static final long KEY_MASK = ~0x1FFL;
+	private static final int LOSS = 1, DRAW = 2, WIN = 3;
+	/** the stores opened by open(), by absolute path; null for a file that couldn't be opened */
+	private static final Map<String, SolvedStore> OPEN = new HashMap<>();
+
+	private final MappedByteBuffer mBuffer;
+	private final int mCols, mRows;
+	private final int mSlotMask;
+
+	/**
+	 * maps the store at path, creating it with the given number of slots if it doesn't exist
+	 * @param path
+	 * @param columns : size of the games
+	 * @param rows : size of the games
+	 * @param slots : slots of a new store, rounded down to a power of 2, 8 bytes each
+	 * @throws IOException if the file can't be mapped, isn't a store or is for another size
+	 */
+	public SolvedStore(String path, int columns, int rows, int slots) throws IOException {
+		File file = new File(path);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+			if (channel.size() == 0) {
+				int bits = Math.min(MAX_BITS, 31 - Integer.numberOfLeadingZeros(Math.max(1, slots)));
+				// sparse on most file systems, only the slots that get written take disk space
+				raf.setLength(HEADER_BYTES + (8L << bits));
+				raf.writeInt(MAGIC);
+				raf.writeInt(columns);
+				raf.writeInt(rows);
+				raf.writeInt(bits);
+			}
+			mBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+		}
+		if (mBuffer.getInt(0) != MAGIC)
+			throw new IOException("not a solved position store");
+		mCols = mBuffer.getInt(4);
+		mRows = mBuffer.getInt(8);
+		if (mCols != columns || mRows != rows)
+			throw new IOException("made for " + mCols + "x" + mRows + ", not " + columns + "x" + rows);
+		int bits = mBuffer.getInt(12);
+		if (bits < 0 || bits > MAX_BITS || HEADER_BYTES + (8L << bits) > mBuffer.capacity())
+			throw new IOException("truncated solved position store");
+		mSlotMask = (1 << bits) - 1;
+	}
+
+	/**
+	 * maps the store at path once per process, later calls for the same file share the mapping
+	 * @param path : null for no store
+	 * @param columns : size of the games
+	 * @param rows : size of the games
+	 * @return the store at path, with 2^22 slots (-Dbot.store.slots=<n>) if it is new, null if there
+	 * is none, it is broken or it is for another size
+	 */
+	public static SolvedStore open(String path, int columns, int rows) {
+		if (path == null)
+			return null;
+		String key = new File(path).toPath().toAbsolutePath().normalize().toString();
+		synchronized (OPEN) {
+			SolvedStore store = OPEN.get(key);
+			if (store != null && (store.mCols != columns || store.mRows != rows)) {
+				System.err.println("Solved position store " + path + " ignored: made for " + store.mCols + "x"
+						+ store.mRows + ", not " + columns + "x" + rows);
+				return null;
+			}
+			if (store != null || OPEN.containsKey(key))
+				return store;
+			try {
+				store = new SolvedStore(path, columns, rows, Integer.getInteger("bot.store.slots", 1 << 22));
+			} catch (IOException e) {
+				System.err.println("Solved position store " + path + " ignored: " + e.getMessage());
+			}
+			OPEN.put(key, store);
+			return store;
+		}
+	}
+
+	/**
+	 * @param field
+	 * @return the slot stored for the position, 0 if it is not in the store
+	 */
+	public synchronized long probe(Field field) {
+		if (field.getNrColumns() != mCols || field.getNrRows() != mRows)
+			return 0;
+		long key = field.getKey();
+		int home = (int) (key ^ (key >>> 32));
+		for (int i = 0; i <= MAX_PROBES; i++) {
+			long slot = mBuffer.getLong(HEADER_BYTES + 8 * ((home + i) & mSlotMask));
+			if (slot == 0)
+				return 0;
+			if ((slot & KEY_MASK) == (key & KEY_MASK))
+				return slot;
+		}
+		return 0;
+	}
+
+	/**
+	 * stores a proven outcome, replacing what was stored for the position
+	 * @param field
+	 * @param result : EndgameSolver.WIN, DRAW or LOSS for the player to move
+	 * @param move : a column of the field that keeps the result, -1 for none
+	 */
+	public synchronized void put(Field field, int result, int move) {
+		if (field.getNrColumns() != mCols || field.getNrRows() != mRows)
+			return;
+		int code = (result == EndgameSolver.WIN) ? WIN : (result == EndgameSolver.DRAW) ? DRAW
+				: (result == EndgameSolver.LOSS) ? LOSS : 0;
+		if (code == 0)
+			return;
+		long key = field.getKey();
+		long entry = (key & KEY_MASK) | ((field.canonicalColumn(move) + 1L) & 0x7F) << 2 | code;
+		int home = (int) (key ^ (key >>> 32));
+		for (int i = 0; i <= MAX_PROBES; i++) {
+			int offset = HEADER_BYTES + 8 * ((home + i) & mSlotMask);
+			long slot = mBuffer.getLong(offset);
+			if (slot == 0 || (slot & KEY_MASK) == (key & KEY_MASK)) {
+				mBuffer.putLong(offset, entry);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @param slot : from probe()
+	 * @return EndgameSolver.WIN, DRAW or LOSS for the player to move, UNKNOWN for an empty slot
+	 */
+	public static int result(long slot) {
+		switch ((int) slot & 3) {
+		case WIN: return EndgameSolver.WIN;
+		case DRAW: return EndgameSolver.DRAW;
+		case LOSS: return EndgameSolver.LOSS;
+		default: return EndgameSolver.UNKNOWN;
+		}
+	}
+
+	/**
+	 * @param slot : from probe()
+	 * @return the stored column for the canonical position, map it with Field.canonicalColumn(); -1 if none
+	 */
+	public static int move(long slot) {
+		return (int) (slot >>> 2 & 0x7F) - 1;
+	}
+
+	/**
+	 * @return the number of slots
+	 */
+	public int capacity() {
+		return mSlotMask + 1;
+	}
+
+	/**
+	 * counts the positions in the store, reading every slot
+	 * @return
+	 */
+	public int size() {
+		int count = 0;
+		for (int i = 0; i <= mSlotMask; i++) {
+			if (mBuffer.getLong(HEADER_BYTES + 8 * i) != 0)
+				count++;
+		}
+		return count;
+	}
+}
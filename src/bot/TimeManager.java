@@ -0,0 +1,99 @@
+package bot;
+
+/**
+ * TimeManager class
+ *
+ * Turns the engine's time control into limits for each move. The engine keeps
+ * a time bank per player: every move takes the time used out of it and adds
+ * time_per_move back, up to timebank. "action move" tells how much is left.
+ *
+ * A move gets its share of the bank over the moves we still have to play plus
+ * the increment, scaled up in the middlegame where the game is decided and
+ * down in the opening. That is the soft limit: no new iteration starts after
+ * it. The hard limit stops the search outright and always leaves a reserve in
+ * the bank, so even a nearly empty bank never runs out.
+ */
+
+public class TimeManager {
+	/** milliseconds kept back for the JVM, the reply and the engine's own clock */
+	private static final int RESERVE = 20;
+	/** the hard limit is at most this many times the soft limit */
+	private static final int HARD_FACTOR = 3;
+
+	private int mTimebank = 10000;
+	private int mTimePerMove = 500;
+	private int mRemaining = 10000;
+	private long mStart = System.nanoTime();
+
+	/**
+	 * @param timebank : maximum time bank in milliseconds
+	 */
+	public void setTimebank(int timebank) {
+		mTimebank = timebank;
+		mRemaining = timebank;
+	}
+
+	/**
+	 * @return maximum time bank in milliseconds
+	 */
+	public int getTimebank() {
+		return mTimebank;
+	}
+
+	/**
+	 * @param timePerMove : milliseconds added to the bank after every move
+	 */
+	public void setTimePerMove(int timePerMove) {
+		mTimePerMove = timePerMove;
+	}
+
+	/**
+	 * starts the clock for a move
+	 * @param remaining : milliseconds left in the bank, as sent with "action move"
+	 */
+	public void startMove(int remaining) {
+		mStart = System.nanoTime();
+		mRemaining = Math.max(0, Math.min(remaining, mTimebank));
+	}
+
+	/**
+	 * @return milliseconds since startMove()
+	 */
+	public long elapsed() {
+		return (System.nanoTime() - mStart) / 1000000L;
+	}
+
+	/**
+	 * @param field
+	 * @return milliseconds from now after which no new iteration should start
+	 */
+	public long softLimit(Field field) {
+		int empty = field.getNrColumns() * field.getNrRows() - field.getNrDiscs();
+		int movesLeft = Math.max(2, (empty + 1) / 2);
+		long usable = usable();
+		long share = usable / movesLeft + mTimePerMove;
+
+		// most games are decided between the opening and the point where the search sees the end
+		int discs = field.getNrDiscs();
+		if (discs < 6)
+			share /= 2;
+		else if (empty > 12)
+			share = share * 3 / 2;
+
+		return Math.max(1, Math.min(share, usable / 2) - elapsed());
+	}
+
+	/**
+	 * @param field
+	 * @return milliseconds from now after which the search must stop
+	 */
+	public long hardLimit(Field field) {
+		long hard = Math.min(usable(), (softLimit(field) + elapsed()) * HARD_FACTOR);
+		return Math.max(1, hard - elapsed());
+	}
+
+	/** the bank without the reserve, the reserve grows with the bank */
+	private long usable() {
+		return Math.max(0, mRemaining - RESERVE - mRemaining / 20);
+	}
+}
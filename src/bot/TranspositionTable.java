@@ -0,0 +1,127 @@
+package bot;
+
+import java.util.Arrays;
+
+/**
+ * TranspositionTable class
+ *
+ * Fixed size cache of searched positions, keyed by Field.getKey(), so a position
+ * and its mirror image share their entry.
+ * Every bucket holds two entries: the first one is only replaced by a deeper
+ * search (or an entry from an older search), the second one is always replaced.
+ * Entries live in two primitive arrays so the garbage collector never has to scan them.
+ *
+ * The table is shared by all search threads without locking: every slot stores
+ * key ^ data next to data, so an entry torn by a concurrent write no longer
+ * matches its key and reads as a miss.
+ */
+
+public class TranspositionTable {
+	public static final int LOWER = 1;
+	public static final int UPPER = 2;
+	public static final int EXACT = 3;
+
+	/** bytes taken by one bucket: two keys and two data words */
+	private static final int BUCKET_BYTES = 32;
+
+	private final long[] mKeys;
+	private final long[] mData;
+	private final int mBucketMask;
+	private volatile int mGeneration = 0;
+
+	/**
+	 * @param megabytes : memory budget, rounded down to a power of two number of buckets
+	 */
+	public TranspositionTable(int megabytes) {
+		long buckets = Math.max(1, (long) megabytes * 1024 * 1024 / BUCKET_BYTES);
+		int size = Integer.highestOneBit((int) Math.min(buckets, 1 << 29));
+		mKeys = new long[size * 2];
+		mData = new long[size * 2];
+		mBucketMask = size - 1;
+	}
+
+	/**
+	 * marks the start of a new search, entries of earlier searches become replaceable
+	 */
+	public synchronized void newSearch() {
+		mGeneration = (mGeneration + 1) & 0xff;
+	}
+
+	/**
+	 * empties the table
+	 */
+	public void clear() {
+		Arrays.fill(mKeys, 0);
+		Arrays.fill(mData, 0);
+	}
+
+	/**
+	 * @param key
+	 * @return the data stored for key, 0 if the position is not in the table
+	 */
+	public long probe(long key) {
+		int slot = ((int) key & mBucketMask) << 1;
+		long data = mData[slot];
+		if ((mKeys[slot] ^ data) == key && data != 0)
+			return data;
+		data = mData[slot + 1];
+		if ((mKeys[slot + 1] ^ data) == key && data != 0)
+			return data;
+		return 0;
+	}
+
+	/**
+	 * stores a search result
+	 * @param key
+	 * @param depth : remaining depth of the search
+	 * @param bound : LOWER, UPPER or EXACT
+	 * @param score
+	 * @param move : best column, -1 if unknown
+	 */
+	public void store(long key, int depth, int bound, int score, int move) {
+		int slot = ((int) key & mBucketMask) << 1;
+		long data = pack(depth, bound, score, move);
+		long old = mData[slot];
+		if ((mKeys[slot] ^ old) == key || old == 0 || depth >= depth(old) || generation(old) != mGeneration) {
+			mKeys[slot] = key ^ data;
+			mData[slot] = data;
+		} else {
+			mKeys[slot + 1] = key ^ data;
+			mData[slot + 1] = data;
+		}
+	}
+
+	private long pack(int depth, int bound, int score, int move) {
+		// deeper than 255 is kept as 255: the entry loses hits it could serve but never ranks as shallow
+		return (score & 0xffffffffL)
+				| ((long) (move & 0xff) << 32)
+				| ((long) Math.max(0, Math.min(depth, 255)) << 40)
+				| ((long) mGeneration << 48)
+				| ((long) bound << 56);
+	}
+
+	public static int score(long data) {
+		return (int) data;
+	}
+
+	/**
+	 * @param data
+	 * @return the stored column, -1 if none
+	 */
+	public static int move(long data) {
+		int move = (int) (data >>> 32) & 0xff;
+		return (move == 0xff) ? -1 : move;
+	}
+
+	public static int depth(long data) {
+		return (int) (data >>> 40) & 0xff;
+	}
+
+	public static int bound(long data) {
+		return (int) (data >>> 56) & 0x3;
+	}
+
+	private static int generation(long data) {
+		return (int) (data >>> 48) & 0xff;
+	}
+}
@@ -0,0 +1,189 @@
+package bot;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Warmup class
+ *
+ * Gets the JIT to compile the hot paths before the first move. BotParser starts
+ * it once the field size is set, so it runs while the settings and the first
+ * updates come in, and stops it as soon as a move is asked for; the first move
+ * then runs compiled code instead of the interpreter. It searches and solves
+ * random positions of the game's size with its own small tables, so nothing it
+ * does is seen by the bot. An engine set after it started is warmed up from
+ * then on. It runs once per JVM.
+ *
+ * The JVM's startup can be cut as well with an AppCDS archive of the bot's
+ * classes. main() plays a short game through BotParser, which loads every class
+ * a game needs, so a run of it can write the archive. The JVM only archives
+ * classes from jars:
+ *
+ *   jar cf bot.jar -C bin bot
+ *   java -XX:ArchiveClassesAtExit=bot.jsa -cp bot.jar bot.Warmup
+ *   java -XX:SharedArchiveFile=bot.jsa -cp bot.jar bot.BotStarter
+ *
+ * Options: -Dbot.warmup=<ms> longest warm-up (1000), 0 to turn it off.
+ */
+
+public class Warmup {
+	/** the longest search or solve, a stop waits for it */
+	private static final long STEP_MILLIS = 25;
+	private static final AtomicBoolean STARTED = new AtomicBoolean();
+
+	private final int mCols, mRows;
+	private final long mMillis;
+	private final Search mSearch = new Search(new TranspositionTable(1));
+	private final EndgameSolver mSolver = new EndgameSolver(1 << 14);
+	/** created when the engine is first warmed up */
+	private volatile MonteCarloSearch mMonteCarlo;
+	private BotStarter mHeuristic;
+	private volatile String mEngine;
+	private volatile boolean mStop;
+	private Thread mThread;
+	private int mPositions;
+
+	private Warmup(int columns, int rows, long millis, String engine) {
+		mCols = columns;
+		mRows = rows;
+		mMillis = millis;
+		mEngine = engine;
+	}
+
+	/**
+	 * starts warming up on a background thread, unless the JVM was warmed up before
+	 * @param columns
+	 * @param rows
+	 * @param engine : one of the BotStarter engines, the one to warm up
+	 * @return the warm-up to stop, null if none was started
+	 */
+	static Warmup start(int columns, int rows, String engine) {
+		long millis = Long.getLong("bot.warmup", 1000);
+		if (millis <= 0 || columns < 4 || rows < 4 || !STARTED.compareAndSet(false, true))
+			return null;
+		final Warmup warmup = new Warmup(columns, rows, millis, engine);
+		warmup.mThread = new Thread(new Runnable() {
+			public void run() {
+				warmup.run();
+			}
+		}, "warmup");
+		warmup.mThread.setDaemon(true);
+		warmup.mThread.start();
+		return warmup;
+	}
+
+	/**
+	 * warms up another engine from the next step on
+	 * @param engine : one of the BotStarter engines
+	 */
+	void setEngine(String engine) {
+		mEngine = engine;
+	}
+
+	/**
+	 * stops the warm-up and waits for it, at most one step
+	 */
+	void stop() {
+		mStop = true;
+		mSearch.stop();
+		MonteCarloSearch monteCarlo = mMonteCarlo;
+		if (monteCarlo != null)
+			monteCarlo.stop();
+		try {
+			mThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the number of positions searched or solved
+	 */
+	int getPositions() {
+		return mPositions;
+	}
+
+	private void run() {
+		long deadline = System.nanoTime() + mMillis * 1000000L;
+		Random random = new Random(mCols * 31 + mRows);
+		int cells = mCols * mRows;
+		while (!mStop && System.nanoTime() < deadline) {
+			// early, middle and late positions, the late ones for the solver
+			Field field = randomField(random, random.nextInt(Math.max(1, cells - 4)));
+			if (field.isFull())
+				continue;
+			int botId = field.getNrDiscs() % 2 + 1;
+			int empty = cells - field.getNrDiscs();
+			String engine = mEngine;
+			if (empty <= 16) {
+				mSolver.bestMove(field, botId, STEP_MILLIS);
+			} else if (BotStarter.MCTS.equals(engine)) {
+				if (mMonteCarlo == null)
+					mMonteCarlo = new MonteCarloSearch(1);
+				// a stop() before the pool was set would be missed
+				if (!mStop)
+					mMonteCarlo.bestMove(field, botId, STEP_MILLIS);
+			} else if (BotStarter.HEURISTIC.equals(engine)) {
+				if (mHeuristic == null)
+					mHeuristic = new BotStarter(1, 1);
+				heuristicTurn(mHeuristic, field, botId);
+			} else {
+				mSearch.bestMove(field, botId, STEP_MILLIS);
+			}
+			mPositions++;
+		}
+	}
+
+	private static void heuristicTurn(BotStarter bot, Field field, int botId) {
+		bot.field = field;
+		bot.botId = botId;
+		bot.heuristicTurn();
+	}
+
+	/** a position after random moves that don't win */
+	private Field randomField(Random random, int discs) {
+		Field field = new Field(mCols, mRows);
+		int botId = 1;
+		for (int i = 0; i < discs && !field.isFull(); i++) {
+			int column = random.nextInt(mCols);
+			if (field.isColumnFull(column) || field.isWinningMove(column, botId))
+				continue;
+			field.play(column, botId);
+			botId = botId % 2 + 1;
+		}
+		return field;
+	}
+
+	/**
+	 * plays a short game through BotParser, then exits; run it with
+	 * -XX:ArchiveClassesAtExit=<archive> to write an AppCDS archive of the classes a game loads
+	 */
+	public static void main(String[] args) {
+		System.setProperty("bot.ponder", "false");
+		StringBuilder game = new StringBuilder();
+		game.append("settings timebank 10000\n");
+		game.append("settings time_per_move 500\n");
+		game.append("settings your_botid 1\n");
+		game.append("settings field_columns 7\n");
+		game.append("settings field_rows 6\n");
+		Field field = new Field(7, 6);
+		for (int round = 1; round <= 4; round++) {
+			game.append("update game round ").append(round).append('\n');
+			game.append("update game field ").append(field.toString()).append('\n');
+			game.append("action move 10000\n");
+			field.play(round % 7, 1);
+			field.play((round + 3) % 7, 2);
+		}
+		PrintStream out = new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		});
+		BotStarter bot = new BotStarter(16, 1);
+		new BotParser(bot, new ByteArrayInputStream(game.toString().getBytes()), out).run();
+		bot.shutdown();
+		System.err.println("Warm-up game played");
+	}
+}
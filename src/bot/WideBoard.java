@@ -0,0 +1,274 @@
+package bot;
+
+/**
+ * WideBoard class
+ *
+ * Board for fields larger than 64 bits, such as 9x7 or 10x8. A player is an
+ * array of longs, each holding as many whole columns as fit, and the words are
+ * shifted together as one long bit string, so every operation is the same as in
+ * LongBoard done a word at a time. Scratch arrays are kept per board, nothing is
+ * allocated after construction. Columns can have at most 31 rows, so a word
+ * holds at least two columns and a shift never skips a word.
+ */
+
+final class WideBoard extends Board {
+	private final Masks mMasks;
+	private final int mWords;
+	private final long[][] mDiscs;
+	private final long[] mMask;
+	// scratch
+	private final long[] mWinning, mOther, mA1, mA2, mA3, mB1, mB2, mB3;
+
+	WideBoard(int columns, int rows) {
+		super(columns, rows);
+		if (rows > 31)
+			throw new IllegalArgumentException("Field " + columns + "x" + rows + " has more than 31 rows.");
+		mMasks = new Masks(columns, rows, stride);
+		mWords = mMasks.bottom.length;
+		mDiscs = new long[2][mWords];
+		mMask = new long[mWords];
+		mWinning = new long[mWords];
+		mOther = new long[mWords];
+		mA1 = new long[mWords];
+		mA2 = new long[mWords];
+		mA3 = new long[mWords];
+		mB1 = new long[mWords];
+		mB2 = new long[mWords];
+		mB3 = new long[mWords];
+	}
+
+	private WideBoard(WideBoard b) {
+		super(b);
+		mMasks = b.mMasks;
+		mWords = b.mWords;
+		mDiscs = new long[][] { b.mDiscs[0].clone(), b.mDiscs[1].clone() };
+		mMask = b.mMask.clone();
+		mWinning = new long[mWords];
+		mOther = new long[mWords];
+		mA1 = new long[mWords];
+		mA2 = new long[mWords];
+		mA3 = new long[mWords];
+		mB1 = new long[mWords];
+		mB2 = new long[mWords];
+		mB3 = new long[mWords];
+	}
+
+	@Override
+	Board copy() {
+		return new WideBoard(this);
+	}
+
+	@Override
+	void clear() {
+		for (int i = 0; i < mWords; i++) {
+			mDiscs[0][i] = 0;
+			mDiscs[1][i] = 0;
+			mMask[i] = 0;
+		}
+	}
+
+	@Override
+	void toggle(int column, int height, int botId) {
+		int word = column / mMasks.perWord;
+		long bit = 1L << ((column % mMasks.perWord) * stride + height);
+		mDiscs[botId - 1][word] ^= bit;
+		mMask[word] ^= bit;
+	}
+
+	@Override
+	int getDisc(int column, int height) {
+		int word = column / mMasks.perWord;
+		long bit = 1L << ((column % mMasks.perWord) * stride + height);
+		if ((mDiscs[0][word] & bit) != 0)
+			return 1;
+		if ((mDiscs[1][word] & bit) != 0)
+			return 2;
+		return 0;
+	}
+
+	/** dst = src shifted towards higher bits, across words */
+	private void shiftUp(long[] src, int shift, long[] dst) {
+		int back = mMasks.bits - shift;
+		for (int i = mWords - 1; i > 0; i--) {
+			dst[i] = ((src[i] << shift) | (src[i - 1] >>> back)) & mMasks.used;
+		}
+		dst[0] = (src[0] << shift) & mMasks.used;
+	}
+
+	/** dst = src shifted towards lower bits, across words */
+	private void shiftDown(long[] src, int shift, long[] dst) {
+		int back = mMasks.bits - shift;
+		for (int i = 0; i < mWords - 1; i++) {
+			dst[i] = (src[i] >>> shift) | ((src[i + 1] << back) & mMasks.used);
+		}
+		dst[mWords - 1] = src[mWords - 1] >>> shift;
+	}
+
+	/** fills dst with the empty cells where botId would align 4, playable or not */
+	private void winningCells(int botId, long[] dst) {
+		long[] p = mDiscs[botId - 1];
+
+		//vertical: three discs right below
+		shiftUp(p, 1, mA1);
+		shiftUp(mA1, 1, mA2);
+		shiftUp(mA2, 1, mA3);
+		for (int i = 0; i < mWords; i++) {
+			dst[i] = mA1[i] & mA2[i] & mA3[i];
+		}
+
+		//horizontal and both diagonals: three discs around the cell on the same line
+		for (int shift = stride - 1; shift <= stride + 1; shift++) {
+			shiftUp(p, shift, mA1);
+			shiftUp(mA1, shift, mA2);
+			shiftUp(mA2, shift, mA3);
+			shiftDown(p, shift, mB1);
+			shiftDown(mB1, shift, mB2);
+			shiftDown(mB2, shift, mB3);
+			for (int i = 0; i < mWords; i++) {
+				long t = mA1[i] & mA2[i];
+				long u = mB1[i] & mB2[i];
+				dst[i] |= (t & (mA3[i] | mB1[i])) | (u & (mA1[i] | mB3[i]));
+			}
+		}
+		for (int i = 0; i < mWords; i++) {
+			dst[i] &= mMasks.board[i] ^ mMask[i];
+		}
+	}
+
+	/** the columns of the cells in word i of a mask */
+	private long columnsOf(int word, long cells) {
+		long columns = 0;
+		while (cells != 0) {
+			columns |= 1L << (word * mMasks.perWord + Long.numberOfTrailingZeros(cells) / stride);
+			cells &= cells - 1;
+		}
+		return columns;
+	}
+
+	@Override
+	long winningColumns(int botId) {
+		winningCells(botId, mWinning);
+		long columns = 0;
+		for (int i = 0; i < mWords; i++) {
+			long playable = (mMask[i] + mMasks.bottom[i]) & mMasks.board[i];
+			columns |= columnsOf(i, mWinning[i] & playable);
+		}
+		return columns;
+	}
+
+	@Override
+	long threatenedColumns(int botId) {
+		winningCells(botId, mWinning);
+		shiftDown(mWinning, 1, mOther);
+		long columns = 0;
+		for (int i = 0; i < mWords; i++) {
+			long playable = (mMask[i] + mMasks.bottom[i]) & mMasks.board[i];
+			columns |= columnsOf(i, mOther[i] & playable);
+		}
+		return columns;
+	}
+
+	@Override
+	int countWinningCells(int botId, int parity) {
+		winningCells(botId, mWinning);
+		int count = 0;
+		for (int i = 0; i < mWords; i++) {
+			long cells = mWinning[i];
+			if (parity == ODD_ROWS)
+				cells &= mMasks.oddRows[i];
+			else if (parity == EVEN_ROWS)
+				cells &= ~mMasks.oddRows[i];
+			count += Long.bitCount(cells);
+		}
+		return count;
+	}
+
+	@Override
+	boolean alignsWithEmpty(int botId, int parity) {
+		long[] p = mDiscs[botId - 1];
+		for (int i = 0; i < mWords; i++) {
+			long rows = (parity == ODD_ROWS) ? mMasks.oddRows[i] : mMasks.board[i] ^ mMasks.oddRows[i];
+			mOther[i] = p[i] | (mMasks.board[i] ^ mMask[i]) & rows;
+		}
+		return isAligned(mOther);
+	}
+
+	/** true if the mask has 4 aligned cells in any direction */
+	private boolean isAligned(long[] cells) {
+		for (int shift : mMasks.directions) {
+			// pairs, then pairs of pairs
+			shiftDown(cells, shift, mA1);
+			for (int i = 0; i < mWords; i++) {
+				mA1[i] &= cells[i];
+			}
+			shiftDown(mA1, shift, mA2);
+			shiftDown(mA2, shift, mA3);
+			for (int i = 0; i < mWords; i++) {
+				if ((mA1[i] & mA3[i]) != 0)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/** the cells of a column from the bottom up, in a mask, bit h for height h */
+	private long column(long[] cells, int column) {
+		return (cells[column / mMasks.perWord] >>> ((column % mMasks.perWord) * stride)) & mMasks.column;
+	}
+
+	@Override
+	boolean hasUnopposedOddThreat(int first, int second) {
+		winningCells(first, mWinning);
+		winningCells(second, mOther);
+		long oddRows = 0x5555555555555555L & mMasks.column;
+		for (int c = 0; c < cols; c++) {
+			long odd = column(mWinning, c) & oddRows;
+			if (odd != 0 && (column(mOther, c) & (Long.lowestOneBit(odd) - 1)) == 0)
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	int stackedThreatTurns(int botId, int[] heights) {
+		winningCells(botId, mWinning);
+		int turns = Integer.MAX_VALUE;
+		for (int c = 0; c < cols; c++) {
+			long winning = column(mWinning, c);
+			long stacked = winning & (winning >>> 1);
+			if (stacked != 0)
+				turns = Math.min(turns, 2 * (Long.numberOfTrailingZeros(stacked) - heights[c] + 1));
+		}
+		return turns;
+	}
+
+	/** masks for a board size, immutable so copies share them */
+	private static final class Masks {
+		final int perWord;
+		final int bits;
+		final long used;
+		final long column;
+		final int[] directions;
+		final long[] bottom;
+		final long[] board;
+		final long[] oddRows;
+
+		Masks(int cols, int rows, int stride) {
+			perWord = 64 / stride;
+			bits = perWord * stride;
+			used = (bits == 64) ? -1L : (1L << bits) - 1;
+			column = (1L << rows) - 1;
+			directions = new int[] { 1, stride - 1, stride, stride + 1 };
+			int words = (cols + perWord - 1) / perWord;
+			bottom = new long[words];
+			board = new long[words];
+			oddRows = new long[words];
+			for (int c = 0; c < cols; c++) {
+				int offset = (c % perWord) * stride;
+				bottom[c / perWord] |= 1L << offset;
+				board[c / perWord] |= column << offset;
+				oddRows[c / perWord] |= (0x5555555555555555L & column) << offset;
+			}
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package bot;
+
+import java.util.Arrays;
+
+/**
+ * WindowTable class
+ *
+ * Every window of 4 cells in a row or on a diagonal where a player could align
+ * 4 (48 on 7x6, the 21 vertical ones are left to a scan of the column), with the
+ * number of discs each player has in it. Field keeps the counts up to date on
+ * every play and undo, so whether a window is still open for a player is one
+ * array read instead of a scan of its cells.
+ *
+ * Windows are numbered line by line, from one end of the line to the other, so
+ * the windows next to a window on its line are the numbers next to it. The
+ * layout depends on the size only and is shared by copies.
+ */
+
+final class WindowTable {
+	static final int HORIZONTAL = 0;
+	static final int ASCENDING = 1;
+	static final int DESCENDING = 2;
+
+	private final Layout mLayout;
+	/** discs per player and window */
+	private final byte[][] mCounts;
+
+	WindowTable(int columns, int rows) {
+		mLayout = new Layout(columns, rows);
+		mCounts = new byte[2][mLayout.windows];
+	}
+
+	WindowTable(WindowTable t) {
+		mLayout = t.mLayout;
+		mCounts = new byte[][] { t.mCounts[0].clone(), t.mCounts[1].clone() };
+	}
+
+	/**
+	 * @return the number of windows
+	 */
+	int size() {
+		return mLayout.windows;
+	}
+
+	/** forgets every disc */
+	void clear() {
+		Arrays.fill(mCounts[0], (byte) 0);
+		Arrays.fill(mCounts[1], (byte) 0);
+	}
+
+	/**
+	 * counts a new disc in the windows through its cell
+	 * @param column
+	 * @param height
+	 * @param botId
+	 */
+	void add(int column, int height, int botId) {
+		byte[] counts = mCounts[botId - 1];
+		for (int window : mLayout.cellWindows[column * mLayout.rows + height]) {
+			counts[window]++;
+		}
+	}
+
+	/**
+	 * takes a disc out of the windows through its cell
+	 * @param column
+	 * @param height
+	 * @param botId
+	 */
+	void remove(int column, int height, int botId) {
+		byte[] counts = mCounts[botId - 1];
+		for (int window : mLayout.cellWindows[column * mLayout.rows + height]) {
+			counts[window]--;
+		}
+	}
+
+	/**
+	 * The cheapest window for botId on the line through the cell, among the windows
+	 * between the nearest opponent discs on either side of the cell. An empty cell
+	 * costs the discs it takes to fill its column up to it, a disc of botId nothing.
+	 * @param line : HORIZONTAL, ASCENDING or DESCENDING
+	 * @param column
+	 * @param height
+	 * @param botId
+	 * @param heights : the number of discs per column
+	 * @return the lowest cost, Integer.MAX_VALUE if there are fewer than 4 cells between the opponent discs
+	 */
+	int turnsToWin(int line, int column, int height, int botId, int[] heights) {
+		Layout layout = mLayout;
+		int cell = column * layout.rows + height;
+		int windows = layout.lineWindows[line][cell];
+		if (windows == 0)
+			return Integer.MAX_VALUE;
+		int first = layout.lineFirst[line][cell];
+		int position = layout.linePosition[line][cell];
+		byte[] opponent = mCounts[botId % 2];
+
+		// a window through the cell without opponent discs, then every open window next to it
+		int open = -1;
+		for (int s = Math.max(0, position - 3); s <= Math.min(position, windows - 1); s++) {
+			if (opponent[first + s] == 0) {
+				open = s;
+				break;
+			}
+		}
+		if (open == -1)
+			return Integer.MAX_VALUE;
+		int low = open, high = open;
+		while (low > 0 && opponent[first + low - 1] == 0)
+			low--;
+		while (high < windows - 1 && opponent[first + high + 1] == 0)
+			high++;
+
+		int best = Integer.MAX_VALUE;
+		int[] columns = layout.columns, cellHeights = layout.heights;
+		for (int window = first + low; window <= first + high; window++) {
+			int cost = 0;
+			for (int i = 4 * window; i < 4 * window + 4; i++) {
+				// the cells of a window are in different columns, so a cell at or above its column's height is empty
+				cost += Math.max(0, cellHeights[i] - heights[columns[i]] + 1);
+			}
+			best = Math.min(best, cost);
+		}
+		return best;
+	}
+
+	/** where the windows are, immutable so copies share it */
+	private static final class Layout {
+		final int rows;
+		final int windows;
+		/** column and height of the 4 cells of every window */
+		final int[] columns, heights;
+		/** the windows through every cell */
+		final int[][] cellWindows;
+		/** per line direction and cell: the first window of the line, the number of windows and the cell's place on the line */
+		final int[][] lineFirst, lineWindows, linePosition;
+
+		Layout(int cols, int rows) {
+			this.rows = rows;
+			int cells = cols * rows;
+			int[] slopes = { 0, 1, -1 }; // HORIZONTAL, ASCENDING, DESCENDING
+			lineFirst = new int[3][cells];
+			lineWindows = new int[3][cells];
+			linePosition = new int[3][cells];
+
+			// count first, then fill
+			int count = 0;
+			int[] windowColumns = null, windowHeights = null;
+			int[][] windowsOfCell = null;
+			for (int pass = 0; pass < 2; pass++) {
+				int[] perCell = new int[cells];
+				int window = 0;
+				for (int line = 0; line < 3; line++) {
+					int slope = slopes[line];
+					for (int c = 0; c < cols; c++) {
+						for (int h = 0; h < rows; h++) {
+							// lines start at the left edge or where the previous cell is off the board
+							int ph = h - slope;
+							if (c > 0 && ph >= 0 && ph < rows)
+								continue;
+							int length = 0;
+							while (c + length < cols && h + slope * length >= 0 && h + slope * length < rows)
+								length++;
+							int lineWindowCount = Math.max(0, length - 3);
+							for (int p = 0; p < length && pass == 1; p++) {
+								int cell = (c + p) * rows + h + slope * p;
+								lineFirst[line][cell] = window;
+								lineWindows[line][cell] = lineWindowCount;
+								linePosition[line][cell] = p;
+							}
+							for (int s = 0; s < lineWindowCount; s++, window++) {
+								for (int i = 0; i < 4; i++) {
+									int cell = (c + s + i) * rows + h + slope * (s + i);
+									if (pass == 1) {
+										windowColumns[4 * window + i] = c + s + i;
+										windowHeights[4 * window + i] = h + slope * (s + i);
+										windowsOfCell[cell][perCell[cell]] = window;
+									}
+									perCell[cell]++;
+								}
+							}
+						}
+					}
+				}
+				if (pass == 0) {
+					count = window;
+					windowColumns = new int[4 * count];
+					windowHeights = new int[4 * count];
+					windowsOfCell = new int[cells][];
+					for (int cell = 0; cell < cells; cell++) {
+						windowsOfCell[cell] = new int[perCell[cell]];
+					}
+				}
+			}
+			columns = windowColumns;
+			heights = windowHeights;
+			cellWindows = windowsOfCell;
+			windows = count;
+		}
+	}
+}